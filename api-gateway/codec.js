@@ -0,0 +1,257 @@
+// api-gateway/codec.js
+// Decoder for the metrics wire formats (see common/metrics-codec).
+// Records are either JSON or the versioned binary format; the format is
+// detected from the first byte.
+
+// Mirrors SchemaDictionary in common/metrics-codec. Versions are append-only.
+const DICTIONARY_VERSIONS = [
+  [
+    // Metrics
+    'cpu_usage', 'memory_usage', 'disk_usage', 'process_count',
+    'response_time', 'error_count', 'request_count',
+    // Services
+    'system-monitor', 'api-gateway',
+    // Regions
+    'default-region', 'us-east', 'us-west', 'eu-west', 'eu-central', 'ap-southeast',
+    // Service health status
+    'healthy', 'warning', 'critical', 'unknown'
+  ],
+  [
+    // Host collector metrics
+    'swap_usage', 'thread_count',
+    'load_average_1m', 'load_average_5m', 'load_average_15m'
+  ]
+];
+
+const FORMAT_V1 = 1;
+const FORMAT_V2 = 2;
+const TYPE_METRIC = 1;
+const TYPE_SERVICE_HEALTH = 2;
+const TYPE_METRIC_BATCH = 3;
+
+function dictionaryFor(version) {
+  if (version < 1 || version > DICTIONARY_VERSIONS.length) {
+    throw new Error(`Unknown dictionary version: ${version}`);
+  }
+  let entries = [];
+  for (let i = 0; i < version; i++) {
+    entries = entries.concat(DICTIONARY_VERSIONS[i]);
+  }
+  return entries;
+}
+
+const dictionaries = DICTIONARY_VERSIONS.map((_, i) => dictionaryFor(i + 1));
+
+class Reader {
+  constructor(buf) {
+    this.buf = buf;
+    this.pos = 0;
+  }
+
+  byte() {
+    if (this.pos >= this.buf.length) {
+      throw new Error('Unexpected end of record');
+    }
+    return this.buf[this.pos++];
+  }
+
+  varint() {
+    // Timestamps exceed 32 bits, so accumulate with multiplication rather than shifts
+    let result = 0;
+    let multiplier = 1;
+    for (let i = 0; i < 10; i++) {
+      const b = this.byte();
+      result += (b & 0x7f) * multiplier;
+      if ((b & 0x80) === 0) {
+        return result;
+      }
+      multiplier *= 128;
+    }
+    throw new Error('Malformed varint');
+  }
+
+  zigzag() {
+    const value = this.varint();
+    return value % 2 === 0 ? value / 2 : -(value + 1) / 2;
+  }
+
+  double() {
+    const value = this.buf.readDoubleBE(this.pos);
+    this.pos += 8;
+    return value;
+  }
+
+  utf8(length) {
+    if (this.pos + length > this.buf.length) {
+      throw new Error('String length exceeds record size');
+    }
+    const value = this.buf.toString('utf8', this.pos, this.pos + length);
+    this.pos += length;
+    return value;
+  }
+
+  uuid() {
+    const hex = this.buf.toString('hex', this.pos, this.pos + 16);
+    this.pos += 16;
+    return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+  }
+
+  literal() {
+    const length = this.varint() - 1;
+    return length < 0 ? null : this.utf8(length);
+  }
+
+  dictString(dictionary) {
+    const code = this.varint();
+    if (code === 0) {
+      return null;
+    }
+    if (code === 1) {
+      return this.utf8(this.varint());
+    }
+    const value = dictionary[code - 2];
+    if (value === undefined) {
+      throw new Error(`Dictionary code ${code} out of range`);
+    }
+    return value;
+  }
+
+  id() {
+    const tag = this.byte();
+    if (tag === 1) {
+      return this.uuid();
+    }
+    if (tag === 2) {
+      return this.utf8(this.varint());
+    }
+    return null;
+  }
+
+  header(expectedType) {
+    const format = this.byte();
+    if (format !== FORMAT_V2) {
+      throw new Error(`Unsupported binary format version: ${format}`);
+    }
+    const type = this.byte();
+    if (type !== expectedType) {
+      throw new Error(`Expected record type ${expectedType} but found ${type}`);
+    }
+    const version = this.varint();
+    const dictionary = dictionaries[version - 1];
+    if (!dictionary) {
+      throw new Error(`Unknown dictionary version: ${version}`);
+    }
+    return dictionary;
+  }
+}
+
+function isJson(buf) {
+  for (let i = 0; i < buf.length; i++) {
+    const b = buf[i];
+    if (b === 0x7b) { // '{'
+      return true;
+    }
+    if (b !== 0x20 && b !== 0x0a && b !== 0x0d && b !== 0x09) {
+      return false;
+    }
+  }
+  return true;
+}
+
+function decodeMetric(buf) {
+  if (isJson(buf)) {
+    return JSON.parse(buf.toString());
+  }
+
+  const reader = new Reader(buf);
+  if (buf[0] === FORMAT_V1) {
+    reader.byte();
+    const timestamp = reader.varint();
+    const value = reader.double();
+    return {
+      id: reader.literal(),
+      timestamp,
+      service: reader.literal(),
+      metric: reader.literal(),
+      value,
+      host: reader.literal(),
+      region: reader.literal()
+    };
+  }
+
+  const dictionary = reader.header(TYPE_METRIC);
+  const id = reader.id();
+  const timestamp = reader.varint();
+  const value = reader.double();
+  return {
+    id,
+    timestamp,
+    service: reader.dictString(dictionary),
+    metric: reader.dictString(dictionary),
+    value,
+    host: reader.dictString(dictionary),
+    region: reader.dictString(dictionary)
+  };
+}
+
+// Decode a metric record holding either one event or an envelope of many; always returns an array
+function decodeMetrics(buf) {
+  if (isJson(buf)) {
+    const record = JSON.parse(buf.toString());
+    if (!Array.isArray(record.metrics)) {
+      return [record];
+    }
+    const { service, host, region, timestamp } = record;
+    return record.metrics.map(entry => ({
+      id: entry.id,
+      timestamp: entry.timestamp !== undefined ? entry.timestamp : timestamp,
+      service,
+      metric: entry.metric,
+      value: entry.value,
+      host,
+      region
+    }));
+  }
+
+  if (buf[0] !== FORMAT_V2 || buf[1] !== TYPE_METRIC_BATCH) {
+    return [decodeMetric(buf)];
+  }
+
+  const reader = new Reader(buf);
+  const dictionary = reader.header(TYPE_METRIC_BATCH);
+  const service = reader.dictString(dictionary);
+  const host = reader.dictString(dictionary);
+  const region = reader.dictString(dictionary);
+  const baseTimestamp = reader.varint();
+  const count = reader.varint();
+  const events = [];
+  for (let i = 0; i < count; i++) {
+    const id = reader.id();
+    const timestamp = baseTimestamp + reader.zigzag();
+    const metric = reader.dictString(dictionary);
+    const value = reader.double();
+    events.push({ id, timestamp, service, metric, value, host, region });
+  }
+  return events;
+}
+
+function decodeServiceHealth(buf) {
+  if (isJson(buf)) {
+    return JSON.parse(buf.toString());
+  }
+
+  const reader = new Reader(buf);
+  const dictionary = reader.header(TYPE_SERVICE_HEALTH);
+  return {
+    service: reader.dictString(dictionary),
+    timestamp: reader.varint(),
+    status: reader.dictString(dictionary),
+    metrics_count: reader.zigzag(),
+    anomalies_count: reader.zigzag(),
+    avg_response_time: reader.double(),
+    avg_cpu_usage: reader.double(),
+    avg_memory_usage: reader.double()
+  };
+}
+
+module.exports = { decodeMetric, decodeMetrics, decodeServiceHealth };
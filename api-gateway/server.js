@@ -6,6 +6,7 @@ const cors = require('cors');
 const bodyParser = require('body-parser');
 const { Kafka } = require('kafkajs');
 const { v4: uuidv4 } = require('uuid');
+const { decodeMetrics, decodeServiceHealth } = require('./codec');
 
 // Express app setup
 const app = express();
@@ -23,8 +24,13 @@ const clients = new Set();
 
 // Store latest metrics for REST API
 const latestMetrics = [];
-const latestAnomalies = [];
+// Anomaly incidents keyed by incident_id, least recently updated first
+const incidents = new Map();
+const MAX_INCIDENTS = 100;
+const SEVERITY_RANK = { medium: 0, high: 1, critical: 2 };
 const serviceHealth = {};
+// Latest rolling statistics per series, keyed "service:metric"
+const rollingMetrics = {};
 
 // Kafka setup with retry logic
 const kafka = new Kafka({
@@ -42,6 +48,57 @@ const kafka = new Kafka({
 const metricsConsumer = kafka.consumer({ groupId: 'metrics-gateway-group' });
 const anomaliesConsumer = kafka.consumer({ groupId: 'anomalies-gateway-group' });
 const serviceHealthConsumer = kafka.consumer({ groupId: 'service-health-gateway-group' });
+// Unique group so every gateway instance replays the compacted topic to rebuild its snapshot
+const rollingMetricsConsumer = kafka.consumer({ groupId: `rolling-metrics-gateway-${uuidv4()}` });
+
+// Fold an alert into its incident. Open, escalated and ongoing alerts carry the
+// latest anomaly; a resolved alert only closes the incident and keeps that anomaly.
+function updateIncident(alert) {
+  const incidentId = alert.incident_id || alert.id;
+  const previous = incidents.get(incidentId);
+  let incident;
+  
+  if (alert.status === 'resolved') {
+    incident = {
+      ...(previous || alert),
+      incident_id: incidentId,
+      status: 'resolved',
+      resolved_at: alert.timestamp,
+      anomaly_count: alert.anomaly_count,
+      suppressed_count: alert.suppressed_count,
+      peak_deviation: alert.peak_deviation
+    };
+  } else {
+    incident = {
+      ...alert,
+      incident_id: incidentId,
+      status: alert.status || 'open'
+    };
+    // Alerts may arrive out of order; keep the latest anomaly of the incident
+    if (previous && previous.timestamp > alert.timestamp) {
+      incident = { ...previous };
+    }
+    if (previous) {
+      // Counts and severity of an incident only grow
+      incident.anomaly_count = Math.max(previous.anomaly_count || 0, alert.anomaly_count || 0);
+      incident.peak_deviation = Math.max(previous.peak_deviation || 0, alert.peak_deviation || 0);
+      if (SEVERITY_RANK[previous.severity] > SEVERITY_RANK[alert.severity]) {
+        incident.severity = previous.severity;
+      }
+    }
+    if (previous && previous.status === 'resolved') {
+      incident.status = 'resolved';
+    }
+  }
+  
+  // Re-insert so the map stays ordered by last update, and bound its size
+  incidents.delete(incidentId);
+  incidents.set(incidentId, incident);
+  if (incidents.size > MAX_INCIDENTS) {
+    incidents.delete(incidents.keys().next().value);
+  }
+  return incident;
+}
 
 // Connect Kafka consumers with retry logic
 async function connectConsumers() {
@@ -58,6 +115,11 @@ async function connectConsumers() {
     await serviceHealthConsumer.connect();
     await serviceHealthConsumer.subscribe({ topic: 'service-health', fromBeginning: false });
     
+    // Connect rolling metrics consumer; the topic is compacted, so reading it from the start
+    // yields the latest value of every series
+    await rollingMetricsConsumer.connect();
+    await rollingMetricsConsumer.subscribe({ topic: 'rolling-metrics', fromBeginning: true });
+    
     console.log('Kafka consumers connected successfully');
     
     // Start consuming
@@ -79,17 +141,20 @@ async function startConsuming() {
   await metricsConsumer.run({
     eachMessage: async ({ topic, partition, message }) => {
       try {
-        const metricData = JSON.parse(message.value.toString());
-        console.log('Received metric:', JSON.stringify(metricData).substring(0, 200) + (JSON.stringify(metricData).length > 200 ? '...' : ''));
+        // A record holds one metric event or an envelope of many
+        const events = decodeMetrics(message.value);
+        console.log(`Received ${events.length} metric(s):`, JSON.stringify(events[0]).substring(0, 200));
         
-        // Store latest metric and limit array size
-        latestMetrics.push(metricData);
-        if (latestMetrics.length > 100) {
-          latestMetrics.shift();
+        for (const metricData of events) {
+          // Store latest metric and limit array size
+          latestMetrics.push(metricData);
+          if (latestMetrics.length > 100) {
+            latestMetrics.shift();
+          }
+          
+          // Broadcast to WebSocket clients
+          broadcast('metrics', metricData);
         }
-        
-        // Broadcast to WebSocket clients
-        broadcast('metrics', metricData);
       } catch (error) {
         console.error('Error processing metrics message:', error);
       }
@@ -100,17 +165,13 @@ async function startConsuming() {
   await anomaliesConsumer.run({
     eachMessage: async ({ topic, partition, message }) => {
       try {
-        const anomaly = JSON.parse(message.value.toString());
-        console.log('Received anomaly:', anomaly);
+        const alert = JSON.parse(message.value.toString());
+        console.log('Received alert:', alert);
         
-        // Store latest anomaly and limit array size
-        latestAnomalies.push(anomaly);
-        if (latestAnomalies.length > 20) {
-          latestAnomalies.shift();
-        }
+        const incident = updateIncident(alert);
         
         // Broadcast to WebSocket clients
-        broadcast('anomalies', anomaly);
+        broadcast('anomalies', incident);
       } catch (error) {
         console.error('Error processing anomaly message:', error);
       }
@@ -121,7 +182,7 @@ async function startConsuming() {
   await serviceHealthConsumer.run({
     eachMessage: async ({ topic, partition, message }) => {
       try {
-        const health = JSON.parse(message.value.toString());
+        const health = decodeServiceHealth(message.value);
         console.log('Received service health:', health);
         
         // Store latest service health
@@ -135,6 +196,28 @@ async function startConsuming() {
     },
   });
   
+  // Rolling metrics consumer
+  await rollingMetricsConsumer.run({
+    eachMessage: async ({ topic, partition, message }) => {
+      try {
+        const stats = JSON.parse(message.value.toString());
+        const key = message.key ? message.key.toString() : `${stats.service}:${stats.metric}`;
+        
+        // Ignore an older window replayed after a newer one
+        const current = rollingMetrics[key];
+        if (current && current.window_end > stats.window_end) {
+          return;
+        }
+        rollingMetrics[key] = stats;
+        
+        // Broadcast to WebSocket clients
+        broadcast('rolling-metrics', stats);
+      } catch (error) {
+        console.error('Error processing rolling metrics message:', error);
+      }
+    },
+  });
+  
   console.log('Kafka consumers running');
 }
 
@@ -170,12 +253,22 @@ wss.on('connection', (ws) => {
           });
         }
         
-        if (data.destination === '/topic/anomalies' && latestAnomalies.length > 0) {
-          console.log(`Sending ${latestAnomalies.length} initial anomalies to new client`);
-          latestAnomalies.forEach(anomaly => {
+        if (data.destination === '/topic/anomalies' && incidents.size > 0) {
+          console.log(`Sending ${incidents.size} incidents to new client`);
+          incidents.forEach(incident => {
             ws.send(JSON.stringify({
               destination: '/topic/anomalies',
-              body: JSON.stringify(anomaly)
+              body: JSON.stringify(incident)
+            }));
+          });
+        }
+        
+        if (data.destination === '/topic/rolling-metrics' && Object.keys(rollingMetrics).length > 0) {
+          console.log(`Sending ${Object.keys(rollingMetrics).length} rolling metrics to new client`);
+          Object.values(rollingMetrics).forEach(stats => {
+            ws.send(JSON.stringify({
+              destination: '/topic/rolling-metrics',
+              body: JSON.stringify(stats)
             }));
           });
         }
@@ -245,7 +338,12 @@ app.get('/api/metrics', (req, res) => {
 
 // Anomalies endpoint
 app.get('/api/anomalies', (req, res) => {
-  res.status(200).json({ anomalies: latestAnomalies });
+  // Newest first; resolved incidents are listed separately from active ones
+  const all = [...incidents.values()].reverse();
+  res.status(200).json({
+    anomalies: all.filter(incident => incident.status !== 'resolved'),
+    resolved: all.filter(incident => incident.status === 'resolved')
+  });
 });
 
 // Service health endpoint
@@ -253,6 +351,11 @@ app.get('/api/service-health', (req, res) => {
   res.status(200).json({ serviceHealth });
 });
 
+// Rolling metrics endpoint
+app.get('/api/rolling-metrics', (req, res) => {
+  res.status(200).json({ rollingMetrics });
+});
+
 // Start server
 const PORT = process.env.PORT || 8080;
 server.listen(PORT, async () => {
@@ -273,6 +376,7 @@ process.on('SIGTERM', async () => {
     await metricsConsumer.disconnect();
     await anomaliesConsumer.disconnect();
     await serviceHealthConsumer.disconnect();
+    await rollingMetricsConsumer.disconnect();
   } catch (err) {
     console.error('Error disconnecting Kafka consumers:', err);
   }
@@ -0,0 +1,427 @@
+package com.example.streaming.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Schema-based binary encoding for metric and service health records.
+ *
+ * Layout (format version 2):
+ *   byte    format version
+ *   byte    record type
+ *   varint  dictionary version (see SchemaDictionary)
+ *   ...     record body
+ *
+ * Metric body:
+ *   id      tag byte (0 = null, 1 = 128-bit UUID as two longs, 2 = string)
+ *   varlong timestamp
+ *   8 bytes value (IEEE 754, big-endian)
+ *   dict    service, metric, host, region
+ *
+ * Metric batch body (see MetricEnvelope):
+ *   dict    service, host, region
+ *   varlong base timestamp
+ *   varint  entry count
+ *   entries id tag as above, zigzag varlong timestamp offset from the
+ *           base, dict metric, 8 bytes value
+ *
+ * Service health body:
+ *   dict    service
+ *   varlong timestamp
+ *   dict    status
+ *   varint  metrics count, anomalies count (zigzag)
+ *   8 bytes average response time, CPU usage, memory usage
+ *
+ * A dict string is a varint code: 0 = null, 1 = literal (varint length +
+ * UTF-8 bytes), n >= 2 = dictionary entry n - 2.
+ *
+ * Format version 1 (metric only, every string as a length-prefixed literal)
+ * is still accepted on decode.
+ *
+ * Not thread-safe; use one instance per thread.
+ */
+public class BinaryCodec {
+    public static final byte FORMAT_V1 = 1;
+    public static final byte FORMAT_V2 = 2;
+    public static final byte CURRENT_FORMAT = FORMAT_V2;
+
+    public static final byte TYPE_METRIC = 1;
+    public static final byte TYPE_SERVICE_HEALTH = 2;
+    public static final byte TYPE_METRIC_BATCH = 3;
+
+    private static final int ID_NULL = 0;
+    private static final int ID_UUID = 1;
+    private static final int ID_STRING = 2;
+
+    private final SchemaDictionary dictionary;
+    private final StringCache stringCache = new StringCache(1024);
+
+    // Reusable output buffer
+    private byte[] out = new byte[128];
+    private int size;
+
+    // Current input
+    private byte[] in;
+    private int pos;
+    private int end;
+
+    public BinaryCodec() {
+        this(SchemaDictionary.CURRENT);
+    }
+
+    public BinaryCodec(SchemaDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Record type of an encoded record, or 0 when it is not a binary record
+     */
+    public static byte recordType(byte[] data) {
+        if (data.length < 2) {
+            return 0;
+        }
+        if (data[0] == FORMAT_V1) {
+            return TYPE_METRIC;
+        }
+        return data[0] == FORMAT_V2 ? data[1] : 0;
+    }
+
+    public byte[] encodeMetric(MetricFields event) {
+        writeHeader(TYPE_METRIC);
+        writeId(event.getId());
+        writeVarLong(event.getTimestamp());
+        writeDouble(event.getValue());
+        writeDictString(event.getService());
+        writeDictString(event.getMetric());
+        writeDictString(event.getHost());
+        writeDictString(event.getRegion());
+        return Arrays.copyOf(out, size);
+    }
+
+    public <T> T decodeMetric(byte[] data, MetricFactory<T> factory) {
+        begin(data);
+        byte format = readByte();
+        if (format == FORMAT_V1) {
+            return decodeMetricV1(factory);
+        }
+        SchemaDictionary recordDictionary = readHeader(format, TYPE_METRIC);
+
+        String id = readId();
+        long timestamp = readVarLong();
+        double value = readDouble();
+        String service = readDictString(recordDictionary);
+        String metric = readDictString(recordDictionary);
+        String host = readDictString(recordDictionary);
+        String region = readDictString(recordDictionary);
+        return factory.create(id, timestamp, service, metric, value, host, region);
+    }
+
+    public byte[] encodeMetricBatch(MetricEnvelope envelope) {
+        writeHeader(TYPE_METRIC_BATCH);
+        writeDictString(envelope.getService());
+        writeDictString(envelope.getHost());
+        writeDictString(envelope.getRegion());
+        writeVarLong(envelope.getTimestamp());
+        writeVarLong(envelope.size());
+        for (int i = 0; i < envelope.size(); i++) {
+            writeId(envelope.getId(i));
+            writeVarLong(zigzag(envelope.getTimestamp(i) - envelope.getTimestamp()));
+            writeDictString(envelope.getMetric(i));
+            writeDouble(envelope.getValue(i));
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * Decode every event of a metric batch record into the sink, returning the number of events
+     */
+    public <T> int decodeMetricBatch(byte[] data, MetricFactory<T> factory, Consumer<? super T> sink) {
+        begin(data);
+        SchemaDictionary recordDictionary = readHeader(readByte(), TYPE_METRIC_BATCH);
+
+        String service = readDictString(recordDictionary);
+        String host = readDictString(recordDictionary);
+        String region = readDictString(recordDictionary);
+        long baseTimestamp = readVarLong();
+        long count = readVarLong();
+        // Every entry takes at least 11 bytes
+        if (count > (end - pos) / 11) {
+            throw new IllegalArgumentException("Metric batch count exceeds record size");
+        }
+
+        for (int i = 0; i < count; i++) {
+            String id = readId();
+            long timestamp = baseTimestamp + unzigzag(readVarLong());
+            String metric = readDictString(recordDictionary);
+            double value = readDouble();
+            sink.accept(factory.create(id, timestamp, service, metric, value, host, region));
+        }
+        return (int) count;
+    }
+
+    public byte[] encodeServiceHealth(ServiceHealthRecord health) {
+        writeHeader(TYPE_SERVICE_HEALTH);
+        writeDictString(health.getService());
+        writeVarLong(health.getTimestamp());
+        writeDictString(health.getStatus());
+        writeVarLong(zigzag(health.getMetricsCount()));
+        writeVarLong(zigzag(health.getAnomaliesCount()));
+        writeDouble(health.getAvgResponseTime());
+        writeDouble(health.getAvgCpuUsage());
+        writeDouble(health.getAvgMemoryUsage());
+        return Arrays.copyOf(out, size);
+    }
+
+    public ServiceHealthRecord decodeServiceHealth(byte[] data) {
+        begin(data);
+        SchemaDictionary recordDictionary = readHeader(readByte(), TYPE_SERVICE_HEALTH);
+
+        ServiceHealthRecord health = new ServiceHealthRecord();
+        health.setService(readDictString(recordDictionary));
+        health.setTimestamp(readVarLong());
+        health.setStatus(readDictString(recordDictionary));
+        health.setMetricsCount((int) unzigzag(readVarLong()));
+        health.setAnomaliesCount((int) unzigzag(readVarLong()));
+        health.setAvgResponseTime(readDouble());
+        health.setAvgCpuUsage(readDouble());
+        health.setAvgMemoryUsage(readDouble());
+        return health;
+    }
+
+    private <T> T decodeMetricV1(MetricFactory<T> factory) {
+        long timestamp = readVarLong();
+        double value = readDouble();
+        String id = readLiteral(false);
+        String service = readLiteral(true);
+        String metric = readLiteral(true);
+        String host = readLiteral(true);
+        String region = readLiteral(true);
+        return factory.create(id, timestamp, service, metric, value, host, region);
+    }
+
+    // ----- Encoding -----
+
+    private void writeHeader(byte type) {
+        size = 0;
+        writeByte(CURRENT_FORMAT);
+        writeByte(type);
+        writeVarLong(dictionary.getVersion());
+    }
+
+    private void writeId(String id) {
+        if (id == null) {
+            writeByte(ID_NULL);
+            return;
+        }
+        if (isCanonicalUuid(id)) {
+            writeByte(ID_UUID);
+            writeLong(parseHex(id, 0));
+            writeLong(parseHex(id, 19));
+            return;
+        }
+        writeByte(ID_STRING);
+        writeLiteral(id);
+    }
+
+    private void writeDictString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        int index = dictionary.indexOf(value);
+        if (index >= 0) {
+            writeVarLong(index + 2L);
+        } else {
+            writeVarLong(1);
+            writeLiteral(value);
+        }
+    }
+
+    private void writeLiteral(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, out, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out[size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            out[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[size++] = (byte) value;
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        out[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, size + extra));
+        }
+    }
+
+    /**
+     * Whether the id is a lower-case 8-4-4-4-12 UUID string, which round-trips
+     * exactly through UUID.toString()
+     */
+    private static boolean isCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse 16 hex digits of a canonical UUID string starting at offset, skipping dashes
+     */
+    private static long parseHex(String id, int offset) {
+        long result = 0;
+        int digits = 0;
+        for (int i = offset; digits < 16; i++) {
+            char c = id.charAt(i);
+            if (c != '-') {
+                result = (result << 4) | Character.digit(c, 16);
+                digits++;
+            }
+        }
+        return result;
+    }
+
+    // ----- Decoding -----
+
+    private void begin(byte[] data) {
+        this.in = data;
+        this.pos = 0;
+        this.end = data.length;
+    }
+
+    private SchemaDictionary readHeader(byte format, byte expectedType) {
+        if (format != FORMAT_V2) {
+            throw new IllegalArgumentException("Unsupported binary format version: " + format);
+        }
+        byte type = readByte();
+        if (type != expectedType) {
+            throw new IllegalArgumentException("Expected record type " + expectedType + " but found " + type);
+        }
+        int version = (int) readVarLong();
+        return version == dictionary.getVersion() ? dictionary : SchemaDictionary.forVersion(version);
+    }
+
+    private String readId() {
+        int tag = readByte();
+        switch (tag) {
+            case ID_NULL:
+                return null;
+            case ID_UUID:
+                return new UUID(readLong(), readLong()).toString();
+            case ID_STRING:
+                return readBytesAsString((int) readVarLong(), false);
+            default:
+                throw new IllegalArgumentException("Unknown id tag: " + tag);
+        }
+    }
+
+    private String readDictString(SchemaDictionary recordDictionary) {
+        long code = readVarLong();
+        if (code == 0) {
+            return null;
+        }
+        if (code == 1) {
+            int length = (int) readVarLong();
+            return readBytesAsString(length, true);
+        }
+        return recordDictionary.get((int) (code - 2));
+    }
+
+    /**
+     * Version 1 string: varint of (length + 1), 0 meaning null
+     */
+    private String readLiteral(boolean cached) {
+        int length = (int) readVarLong() - 1;
+        if (length < 0) {
+            return null;
+        }
+        return readBytesAsString(length, cached);
+    }
+
+    private String readBytesAsString(int length, boolean cached) {
+        if (length < 0 || length > end - pos) {
+            throw new IllegalArgumentException("String length exceeds record size");
+        }
+        String value = cached
+                ? stringCache.get(in, pos, length)
+                : new String(in, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    private double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    private long readLong() {
+        if (end - pos < 8) {
+            throw new IllegalArgumentException("Unexpected end of record");
+        }
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (in[pos++] & 0xFF);
+        }
+        return result;
+    }
+
+    private long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private byte readByte() {
+        if (pos >= end) {
+            throw new IllegalArgumentException("Unexpected end of record");
+        }
+        return in[pos++];
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
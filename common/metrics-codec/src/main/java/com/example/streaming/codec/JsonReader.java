@@ -0,0 +1,345 @@
+package com.example.streaming.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal pull parser for flat JSON objects. Values are read straight from
+ * the record bytes without building an intermediate object tree. Nested
+ * values of unknown fields are skipped; a field holding an array of flat
+ * objects can be read with beginArray() and nextElement(). Not thread-safe.
+ */
+public class JsonReader {
+    // Low-cardinality strings (service, metric, host, ...) decode to shared instances
+    private final StringCache stringCache = new StringCache(1024);
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private int keyStart;
+    private int keyEnd;
+    private boolean first;
+    private boolean firstElement;
+
+    // Scratch space for strings that contain escape sequences
+    private char[] chars = new char[64];
+
+    public static byte[] field(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Start reading the object held in data[offset, offset + length)
+     */
+    public void beginObject(byte[] data, int offset, int length) {
+        this.buf = data;
+        this.pos = offset;
+        this.end = offset + length;
+        skipWhitespace();
+        expect('{');
+        first = true;
+    }
+
+    /**
+     * Advance to the next field name. Returns false at the end of the object.
+     */
+    public boolean nextField() {
+        skipWhitespace();
+        if (first) {
+            first = false;
+            if (peek() == '}') {
+                pos++;
+                return false;
+            }
+        } else {
+            byte next = next();
+            if (next == '}') {
+                return false;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or '}'");
+            }
+            skipWhitespace();
+        }
+
+        expect('"');
+        keyStart = pos;
+        keyEnd = skipStringBody();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        return true;
+    }
+
+    /**
+     * Enter the array value of the current field
+     */
+    public void beginArray() {
+        expect('[');
+        firstElement = true;
+    }
+
+    /**
+     * Advance to the next element of the current array, which must be an object,
+     * and enter it; read its fields with nextField(). Returns false at the end of
+     * the array, after which the fields of the enclosing object continue.
+     */
+    public boolean nextElement() {
+        skipWhitespace();
+        if (firstElement) {
+            firstElement = false;
+            if (peek() == ']') {
+                pos++;
+                return false;
+            }
+        } else {
+            byte next = next();
+            if (next == ']') {
+                return false;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or ']'");
+            }
+            skipWhitespace();
+        }
+        expect('{');
+        first = true;
+        return true;
+    }
+
+    /**
+     * Whether the current field name equals the given ASCII name
+     */
+    public boolean fieldIs(byte[] name) {
+        return Arrays.equals(name, 0, name.length, buf, keyStart, keyEnd);
+    }
+
+    public long readLong() {
+        int start = pos;
+        boolean integral = scanNumber();
+        if (integral && pos - start <= 18) {
+            return parseIntegral(start, pos);
+        }
+        return (long) Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1));
+    }
+
+    public int readInt() {
+        return (int) readLong();
+    }
+
+    public double readDouble() {
+        int start = pos;
+        boolean integral = scanNumber();
+        if (integral && pos - start <= 15) {
+            // Integers up to 15 digits are exactly representable as doubles
+            return parseIntegral(start, pos);
+        }
+        return Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Read a string that is expected to repeat across records
+     */
+    public String readCachedString() {
+        return readString(true);
+    }
+
+    public String readString() {
+        return readString(false);
+    }
+
+    public void skipValue() {
+        byte b = peek();
+        if (b == '"') {
+            pos++;
+            skipStringBody();
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                byte c = next();
+                if (c == '"') {
+                    skipStringBody();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else if (b == 't') {
+            expectLiteral("true");
+        } else if (b == 'f') {
+            expectLiteral("false");
+        } else if (b == 'n') {
+            expectLiteral("null");
+        } else {
+            scanNumber();
+        }
+    }
+
+    private String readString(boolean cached) {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        boolean plain = true;
+        while (true) {
+            if (pos >= end) {
+                throw error("Unterminated string");
+            }
+            byte b = buf[pos];
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                plain = false;
+                break;
+            }
+            pos++;
+        }
+
+        if (plain) {
+            int length = pos - start;
+            pos++; // closing quote
+            return cached
+                    ? stringCache.get(buf, start, length)
+                    : new String(buf, start, length, StandardCharsets.UTF_8);
+        }
+
+        pos = start;
+        return readEscapedString();
+    }
+
+    private String readEscapedString() {
+        // Escapes are rare in metric records, so decode the raw UTF-8 and then unescape
+        int start = pos;
+        int stop = skipStringBody();
+        String raw = new String(buf, start, stop - start, StandardCharsets.UTF_8);
+
+        if (chars.length < raw.length()) {
+            chars = new char[raw.length()];
+        }
+        int length = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                chars[length++] = c;
+                continue;
+            }
+            char escaped = raw.charAt(++i);
+            switch (escaped) {
+                case 'b': chars[length++] = '\b'; break;
+                case 'f': chars[length++] = '\f'; break;
+                case 'n': chars[length++] = '\n'; break;
+                case 'r': chars[length++] = '\r'; break;
+                case 't': chars[length++] = '\t'; break;
+                case 'u':
+                    chars[length++] = (char) Integer.parseInt(raw.substring(i + 1, i + 5), 16);
+                    i += 4;
+                    break;
+                default: chars[length++] = escaped; break;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Advance over a JSON number, returning true when it has no fraction or exponent
+     */
+    private boolean scanNumber() {
+        int start = pos;
+        boolean integral = true;
+        while (pos < end) {
+            byte b = buf[pos];
+            if ((b >= '0' && b <= '9') || b == '-' || b == '+') {
+                pos++;
+            } else if (b == '.' || b == 'e' || b == 'E') {
+                integral = false;
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (pos == start) {
+            throw error("Expected a number");
+        }
+        return integral;
+    }
+
+    private long parseIntegral(int start, int stop) {
+        boolean negative = buf[start] == '-';
+        int i = negative || buf[start] == '+' ? start + 1 : start;
+        if (i == stop) {
+            throw error("Malformed number");
+        }
+        long result = 0;
+        for (; i < stop; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Malformed number");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Advance past a string body whose opening quote was already consumed.
+     * Returns the index of the closing quote.
+     */
+    private int skipStringBody() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b == '\\') {
+                pos += 2;
+            } else if (b == '"') {
+                return pos++;
+            } else {
+                pos++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of input");
+        }
+        return buf[pos];
+    }
+
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+}
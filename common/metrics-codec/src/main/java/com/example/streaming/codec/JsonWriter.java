@@ -0,0 +1,190 @@
+package com.example.streaming.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes flat JSON objects directly into a reusable UTF-8 byte buffer.
+ * Nested objects and one level of arrays of objects are supported.
+ * Not thread-safe; call reset() before writing the next object.
+ */
+public class JsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf;
+    private int size;
+    private boolean firstField;
+    private boolean firstElement;
+
+    public JsonWriter() {
+        this(256);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public JsonWriter reset() {
+        size = 0;
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        writeByte('{');
+        firstField = true;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        writeByte('}');
+        firstField = false;
+        return this;
+    }
+
+    public JsonWriter field(String name, String value) {
+        name(name);
+        if (value == null) {
+            writeAscii("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter field(String name, long value) {
+        name(name);
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter field(String name, double value) {
+        name(name);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeAscii("null");
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeAscii(Long.toString((long) value));
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter field(String name, boolean value) {
+        name(name);
+        writeAscii(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Start a nested object value for the given field
+     */
+    public JsonWriter objectField(String name) {
+        name(name);
+        return beginObject();
+    }
+
+    /**
+     * Start an array value for the given field; add elements with beginElement()
+     */
+    public JsonWriter arrayField(String name) {
+        name(name);
+        writeByte('[');
+        firstElement = true;
+        return this;
+    }
+
+    /**
+     * Start the next object element of the current array
+     */
+    public JsonWriter beginElement() {
+        if (!firstElement) {
+            writeByte(',');
+        }
+        firstElement = false;
+        return beginObject();
+    }
+
+    public JsonWriter endArray() {
+        writeByte(']');
+        firstField = false;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void name(String name) {
+        if (!firstField) {
+            writeByte(',');
+        }
+        firstField = false;
+        writeString(name);
+        writeByte(':');
+    }
+
+    private void writeString(String value) {
+        ensureCapacity(value.length() + 2);
+        buf[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                writeByte('\\');
+                writeByte('u');
+                writeByte('0');
+                writeByte('0');
+                writeByte(HEX[c >> 4]);
+                writeByte(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buf[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buf[size++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+}
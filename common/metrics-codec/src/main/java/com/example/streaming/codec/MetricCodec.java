@@ -0,0 +1,319 @@
+package com.example.streaming.codec;
+
+import java.util.function.Consumer;
+
+/**
+ * Encodes and decodes metric and service health records in either wire
+ * format. Records are written in the configured format; on decode the
+ * format is detected from the record bytes, so producers can be migrated
+ * between formats without coordinating consumers.
+ *
+ * A metric record holds either one event or a MetricEnvelope of many
+ * events; decodeEach() accepts both, decode() only single events. In JSON
+ * an envelope is an object with service, host, region and timestamp and a
+ * "metrics" array of {id, metric, value[, timestamp]} entries.
+ *
+ * Not thread-safe; use one instance per thread or per Flink subtask.
+ */
+public class MetricCodec {
+    private static final byte[] FIELD_ID = JsonReader.field("id");
+    private static final byte[] FIELD_TIMESTAMP = JsonReader.field("timestamp");
+    private static final byte[] FIELD_SERVICE = JsonReader.field("service");
+    private static final byte[] FIELD_METRIC = JsonReader.field("metric");
+    private static final byte[] FIELD_VALUE = JsonReader.field("value");
+    private static final byte[] FIELD_HOST = JsonReader.field("host");
+    private static final byte[] FIELD_REGION = JsonReader.field("region");
+    private static final byte[] FIELD_METRICS = JsonReader.field("metrics");
+    private static final byte[] FIELD_STATUS = JsonReader.field("status");
+    private static final byte[] FIELD_METRICS_COUNT = JsonReader.field("metrics_count");
+    private static final byte[] FIELD_ANOMALIES_COUNT = JsonReader.field("anomalies_count");
+    private static final byte[] FIELD_AVG_RESPONSE_TIME = JsonReader.field("avg_response_time");
+    private static final byte[] FIELD_AVG_CPU_USAGE = JsonReader.field("avg_cpu_usage");
+    private static final byte[] FIELD_AVG_MEMORY_USAGE = JsonReader.field("avg_memory_usage");
+
+    private final WireFormat format;
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+    private final JsonReader jsonReader = new JsonReader();
+    private final JsonWriter jsonWriter = new JsonWriter();
+
+    // Entries of the JSON envelope being decoded
+    private final MetricEnvelope jsonEnvelope = new MetricEnvelope();
+
+    public MetricCodec(WireFormat format) {
+        this.format = format;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public byte[] encode(MetricFields event) {
+        if (format == WireFormat.BINARY) {
+            return binaryCodec.encodeMetric(event);
+        }
+        return writeJson(event).toByteArray();
+    }
+
+    public byte[] encode(MetricEnvelope envelope) {
+        if (format == WireFormat.BINARY) {
+            return binaryCodec.encodeMetricBatch(envelope);
+        }
+
+        JsonWriter writer = jsonWriter.reset().beginObject()
+                .field("service", envelope.getService())
+                .field("host", envelope.getHost())
+                .field("region", envelope.getRegion())
+                .field("timestamp", envelope.getTimestamp())
+                .arrayField("metrics");
+        for (int i = 0; i < envelope.size(); i++) {
+            writer.beginElement()
+                    .field("id", envelope.getId(i))
+                    .field("metric", envelope.getMetric(i))
+                    .field("value", envelope.getValue(i));
+            if (envelope.getTimestamp(i) != envelope.getTimestamp()) {
+                writer.field("timestamp", envelope.getTimestamp(i));
+            }
+            writer.endObject();
+        }
+        return writer.endArray().endObject().toByteArray();
+    }
+
+    public byte[] encode(ServiceHealthRecord health) {
+        if (format == WireFormat.BINARY) {
+            return binaryCodec.encodeServiceHealth(health);
+        }
+        return jsonWriter.reset().beginObject()
+                .field("service", health.getService())
+                .field("timestamp", health.getTimestamp())
+                .field("status", health.getStatus())
+                .field("metrics_count", health.getMetricsCount())
+                .field("anomalies_count", health.getAnomaliesCount())
+                .field("avg_response_time", health.getAvgResponseTime())
+                .field("avg_cpu_usage", health.getAvgCpuUsage())
+                .field("avg_memory_usage", health.getAvgMemoryUsage())
+                .endObject()
+                .toByteArray();
+    }
+
+    /**
+     * Render a metric as a JSON string regardless of the configured format
+     */
+    public String toJson(MetricFields event) {
+        return writeJson(event).toString();
+    }
+
+    public <T> T decode(byte[] data, MetricFactory<T> factory) {
+        return decode(data, WireFormat.detect(data), factory);
+    }
+
+    public <T> T decode(byte[] data, WireFormat dataFormat, MetricFactory<T> factory) {
+        if (dataFormat == WireFormat.BINARY) {
+            return binaryCodec.decodeMetric(data, factory);
+        }
+        return decodeJsonMetric(data, factory);
+    }
+
+    /**
+     * Decode a single-event or envelope record, passing every event to the sink.
+     * Returns the number of events decoded.
+     */
+    public <T> int decodeEach(byte[] data, MetricFactory<T> factory, Consumer<? super T> sink) {
+        return decodeEach(data, WireFormat.detect(data), factory, sink);
+    }
+
+    public <T> int decodeEach(byte[] data, WireFormat dataFormat, MetricFactory<T> factory, Consumer<? super T> sink) {
+        if (dataFormat == WireFormat.BINARY) {
+            if (BinaryCodec.recordType(data) == BinaryCodec.TYPE_METRIC_BATCH) {
+                return binaryCodec.decodeMetricBatch(data, factory, sink);
+            }
+            sink.accept(binaryCodec.decodeMetric(data, factory));
+            return 1;
+        }
+        return decodeJsonEach(data, factory, sink);
+    }
+
+    public ServiceHealthRecord decodeServiceHealth(byte[] data) {
+        if (WireFormat.detect(data) == WireFormat.BINARY) {
+            return binaryCodec.decodeServiceHealth(data);
+        }
+
+        ServiceHealthRecord health = new ServiceHealthRecord();
+        JsonReader reader = jsonReader;
+        reader.beginObject(data, 0, data.length);
+        while (reader.nextField()) {
+            if (reader.fieldIs(FIELD_SERVICE)) {
+                health.setService(reader.readCachedString());
+            } else if (reader.fieldIs(FIELD_TIMESTAMP)) {
+                health.setTimestamp(reader.readLong());
+            } else if (reader.fieldIs(FIELD_STATUS)) {
+                health.setStatus(reader.readCachedString());
+            } else if (reader.fieldIs(FIELD_METRICS_COUNT)) {
+                health.setMetricsCount(reader.readInt());
+            } else if (reader.fieldIs(FIELD_ANOMALIES_COUNT)) {
+                health.setAnomaliesCount(reader.readInt());
+            } else if (reader.fieldIs(FIELD_AVG_RESPONSE_TIME)) {
+                health.setAvgResponseTime(reader.readDouble());
+            } else if (reader.fieldIs(FIELD_AVG_CPU_USAGE)) {
+                health.setAvgCpuUsage(reader.readDouble());
+            } else if (reader.fieldIs(FIELD_AVG_MEMORY_USAGE)) {
+                health.setAvgMemoryUsage(reader.readDouble());
+            } else {
+                reader.skipValue();
+            }
+        }
+        if (health.getService() == null) {
+            throw new IllegalArgumentException("Service health record is missing the service");
+        }
+        return health;
+    }
+
+    private <T> T decodeJsonMetric(byte[] data, MetricFactory<T> factory) {
+        String id = null;
+        long timestamp = 0;
+        String service = null;
+        String metric = null;
+        double value = 0;
+        String host = null;
+        String region = null;
+        boolean hasTimestamp = false;
+        boolean hasValue = false;
+
+        JsonReader reader = jsonReader;
+        reader.beginObject(data, 0, data.length);
+        while (reader.nextField()) {
+            if (reader.fieldIs(FIELD_TIMESTAMP)) {
+                timestamp = reader.readLong();
+                hasTimestamp = true;
+            } else if (reader.fieldIs(FIELD_VALUE)) {
+                value = reader.readDouble();
+                hasValue = true;
+            } else if (reader.fieldIs(FIELD_SERVICE)) {
+                service = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_METRIC)) {
+                metric = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_HOST)) {
+                host = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_REGION)) {
+                region = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_ID)) {
+                id = reader.readString();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        if (!hasTimestamp || !hasValue || service == null || metric == null) {
+            throw new IllegalArgumentException("Metric event is missing a required field");
+        }
+        return factory.create(id, timestamp, service, metric, value, host, region);
+    }
+
+    /**
+     * Single pass over a JSON metric record that may be a single event or an envelope
+     */
+    private <T> int decodeJsonEach(byte[] data, MetricFactory<T> factory, Consumer<? super T> sink) {
+        String id = null;
+        long timestamp = 0;
+        String service = null;
+        String metric = null;
+        double value = 0;
+        String host = null;
+        String region = null;
+        boolean hasTimestamp = false;
+        boolean hasValue = false;
+        boolean envelope = false;
+
+        JsonReader reader = jsonReader;
+        reader.beginObject(data, 0, data.length);
+        while (reader.nextField()) {
+            if (reader.fieldIs(FIELD_TIMESTAMP)) {
+                timestamp = reader.readLong();
+                hasTimestamp = true;
+            } else if (reader.fieldIs(FIELD_VALUE)) {
+                value = reader.readDouble();
+                hasValue = true;
+            } else if (reader.fieldIs(FIELD_SERVICE)) {
+                service = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_METRIC)) {
+                metric = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_HOST)) {
+                host = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_REGION)) {
+                region = reader.readCachedString();
+            } else if (reader.fieldIs(FIELD_ID)) {
+                id = reader.readString();
+            } else if (reader.fieldIs(FIELD_METRICS)) {
+                readJsonEntries(reader);
+                envelope = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        if (!envelope) {
+            if (!hasTimestamp || !hasValue || service == null || metric == null) {
+                throw new IllegalArgumentException("Metric event is missing a required field");
+            }
+            sink.accept(factory.create(id, timestamp, service, metric, value, host, region));
+            return 1;
+        }
+
+        if (!hasTimestamp || service == null) {
+            throw new IllegalArgumentException("Metric envelope is missing a required field");
+        }
+        // The header may follow the entries, so entry timestamps are resolved last
+        MetricEnvelope entries = jsonEnvelope;
+        for (int i = 0; i < entries.size(); i++) {
+            long entryTimestamp = entries.getTimestamp(i) == Long.MIN_VALUE ? timestamp : entries.getTimestamp(i);
+            sink.accept(factory.create(entries.getId(i), entryTimestamp, service, entries.getMetric(i),
+                    entries.getValue(i), host, region));
+        }
+        return entries.size();
+    }
+
+    /**
+     * Read the "metrics" array of a JSON envelope into jsonEnvelope; a missing
+     * entry timestamp is recorded as Long.MIN_VALUE
+     */
+    private void readJsonEntries(JsonReader reader) {
+        MetricEnvelope entries = jsonEnvelope.reset(null, null, null, 0);
+        reader.beginArray();
+        while (reader.nextElement()) {
+            String id = null;
+            long timestamp = Long.MIN_VALUE;
+            String metric = null;
+            double value = 0;
+            boolean hasValue = false;
+            while (reader.nextField()) {
+                if (reader.fieldIs(FIELD_METRIC)) {
+                    metric = reader.readCachedString();
+                } else if (reader.fieldIs(FIELD_VALUE)) {
+                    value = reader.readDouble();
+                    hasValue = true;
+                } else if (reader.fieldIs(FIELD_ID)) {
+                    id = reader.readString();
+                } else if (reader.fieldIs(FIELD_TIMESTAMP)) {
+                    timestamp = reader.readLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            if (metric == null || !hasValue) {
+                throw new IllegalArgumentException("Metric envelope entry is missing a required field");
+            }
+            entries.add(id, timestamp, metric, value);
+        }
+    }
+
+    private JsonWriter writeJson(MetricFields event) {
+        return jsonWriter.reset().beginObject()
+                .field("id", event.getId())
+                .field("timestamp", event.getTimestamp())
+                .field("service", event.getService())
+                .field("metric", event.getMetric())
+                .field("value", event.getValue())
+                .field("host", event.getHost())
+                .field("region", event.getRegion())
+                .endObject();
+    }
+}
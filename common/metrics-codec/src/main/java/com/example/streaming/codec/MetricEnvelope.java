@@ -0,0 +1,94 @@
+package com.example.streaming.codec;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Many metric events from one service, host and region, encoded as a single
+ * record. Service, host, region and a base timestamp are stored once in the
+ * envelope header; each entry carries only its id, metric, value and
+ * timestamp.
+ *
+ * Reusable: reset() starts a new envelope without reallocating entries.
+ */
+public class MetricEnvelope {
+    private String service;
+    private String host;
+    private String region;
+    private long timestamp;
+
+    private String[] ids = new String[16];
+    private long[] timestamps = new long[16];
+    private String[] metrics = new String[16];
+    private double[] values = new double[16];
+    private int size;
+
+    public MetricEnvelope() {
+    }
+
+    public MetricEnvelope(String service, String host, String region, long timestamp) {
+        reset(service, host, region, timestamp);
+    }
+
+    /**
+     * Clear the entries and set the header for the next envelope
+     */
+    public MetricEnvelope reset(String service, String host, String region, long timestamp) {
+        this.service = service;
+        this.host = host;
+        this.region = region;
+        this.timestamp = timestamp;
+        Arrays.fill(ids, 0, size, null);
+        Arrays.fill(metrics, 0, size, null);
+        size = 0;
+        return this;
+    }
+
+    public MetricEnvelope add(String id, long timestamp, String metric, double value) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            metrics = Arrays.copyOf(metrics, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        ids[size] = id;
+        timestamps[size] = timestamp;
+        metrics[size] = metric;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    public String getService() { return service; }
+
+    public String getHost() { return host; }
+
+    public String getRegion() { return region; }
+
+    /**
+     * Base timestamp of the envelope; entry timestamps are stored relative to it
+     */
+    public long getTimestamp() { return timestamp; }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public String getId(int index) { return ids[index]; }
+
+    public long getTimestamp(int index) { return timestamps[index]; }
+
+    public String getMetric(int index) { return metrics[index]; }
+
+    public double getValue(int index) { return values[index]; }
+
+    /**
+     * Create one event per entry with the header fields filled in
+     */
+    public <T> void forEach(MetricFactory<T> factory, Consumer<? super T> sink) {
+        for (int i = 0; i < size; i++) {
+            sink.accept(factory.create(ids[i], timestamps[i], service, metrics[i], values[i], host, region));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.streaming.codec;
+
+/**
+ * Creates the caller's metric type from decoded fields, so records decode
+ * directly into the target object without an intermediate representation
+ */
+@FunctionalInterface
+public interface MetricFactory<T> {
+    T create(String id, long timestamp, String service, String metric,
+             double value, String host, String region);
+}
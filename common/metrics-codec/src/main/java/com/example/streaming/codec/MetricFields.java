@@ -0,0 +1,21 @@
+package com.example.streaming.codec;
+
+/**
+ * Read-only view of a metric event, implemented by every in-memory
+ * representation the codec can encode
+ */
+public interface MetricFields {
+    String getId();
+
+    long getTimestamp();
+
+    String getService();
+
+    String getMetric();
+
+    double getValue();
+
+    String getHost();
+
+    String getRegion();
+}
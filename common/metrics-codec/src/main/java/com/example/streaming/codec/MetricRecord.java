@@ -0,0 +1,58 @@
+package com.example.streaming.codec;
+
+/**
+ * POJO representing a metric event on the metrics-data topic
+ */
+public class MetricRecord implements MetricFields {
+    public static final MetricFactory<MetricRecord> FACTORY = MetricRecord::new;
+
+    private String id;
+    private long timestamp;
+    private String service;
+    private String metric;
+    private double value;
+    private String host;
+    private String region;
+
+    public MetricRecord() {
+    }
+
+    public MetricRecord(String id, long timestamp, String service, String metric,
+                        double value, String host, String region) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.service = service;
+        this.metric = metric;
+        this.value = value;
+        this.host = host;
+        this.region = region;
+    }
+
+    @Override
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    @Override
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    @Override
+    public String getService() { return service; }
+    public void setService(String service) { this.service = service; }
+
+    @Override
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+
+    @Override
+    public double getValue() { return value; }
+    public void setValue(double value) { this.value = value; }
+
+    @Override
+    public String getHost() { return host; }
+    public void setHost(String host) { this.host = host; }
+
+    @Override
+    public String getRegion() { return region; }
+    public void setRegion(String region) { this.region = region; }
+}
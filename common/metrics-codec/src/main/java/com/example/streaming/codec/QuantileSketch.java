@@ -0,0 +1,401 @@
+package com.example.streaming.codec;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative-error guarantee (DDSketch-style).
+ *
+ * Values are counted in logarithmic bins whose bounds grow by a factor of
+ * gamma = (1 + a) / (1 - a), so every quantile is returned within relative
+ * accuracy a of the true value. Sketches with the same accuracy merge by
+ * adding bin counts, which makes percentiles over any range of windows
+ * answerable without the raw points. The number of bins per sign is bounded;
+ * past the bound the lowest bins are collapsed together, which keeps the
+ * upper quantiles that SLOs care about accurate.
+ *
+ * Encoding (version 1):
+ *   byte    encoding version
+ *   8 bytes relative accuracy
+ *   varint  max bins
+ *   varlong zero count
+ *   store   positive bins, then negative bins: varint bin count, then per
+ *           non-empty bin a zigzag varint index delta and a varlong count
+ *
+ * Not thread-safe.
+ */
+public class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BINS = 2048;
+
+    private static final byte ENCODING_VERSION = 1;
+
+    // Magnitudes below this are counted as zero
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private final double gamma;
+    private final double logGamma;
+
+    private final Bins positive;
+    private final Bins negative;
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        // Written so that NaN, e.g. from a corrupt encoding, is rejected too
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        if (maxBins < 1) {
+            throw new IllegalArgumentException("Max bins must be positive: " + maxBins);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Bins(maxBins);
+        this.negative = new Bins(maxBins);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    /**
+     * Add the counts of another sketch with the same relative accuracy into this one
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with relative accuracy "
+                    + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+        positive.addAll(other.positive);
+        negative.addAll(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * Value at quantile q in [0, 1], or NaN when the sketch is empty
+     */
+    public double quantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        for (int i = negative.maxIndex; i >= negative.minIndex && !negative.isEmpty(); i--) {
+            seen += negative.get(i);
+            if (seen > rank) {
+                return -value(i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = positive.minIndex; i <= positive.maxIndex; i++) {
+            seen += positive.get(i);
+            if (seen > rank) {
+                return value(i);
+            }
+        }
+        return value(positive.maxIndex);
+    }
+
+    public byte[] encode() {
+        Buffer out = new Buffer(32 + 4 * (positive.size() + negative.size()));
+        out.writeByte(ENCODING_VERSION);
+        out.writeLong(Double.doubleToRawLongBits(relativeAccuracy));
+        out.writeVarLong(maxBins);
+        out.writeVarLong(zeroCount);
+        positive.encode(out);
+        negative.encode(out);
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch decode(byte[] data) {
+        Buffer in = new Buffer(data);
+        byte version = in.readByte();
+        if (version != ENCODING_VERSION) {
+            throw new IllegalArgumentException("Unsupported sketch encoding version: " + version);
+        }
+        double relativeAccuracy = Double.longBitsToDouble(in.readLong());
+        int maxBins = (int) in.readVarLong();
+        QuantileSketch sketch = new QuantileSketch(relativeAccuracy, maxBins);
+        sketch.zeroCount = in.readVarLong();
+        sketch.count = sketch.zeroCount
+                + sketch.positive.decode(in)
+                + sketch.negative.decode(in);
+        return sketch;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    /**
+     * Representative value of bin i, within relative accuracy of every value in (gamma^(i-1), gamma^i]
+     */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Dense counts for a contiguous range of bin indexes, at most maxBins wide
+     */
+    private static class Bins {
+        private static final int GROWTH_SLACK = 16;
+
+        private final int maxBins;
+        private long[] counts = new long[0];
+        private int offset;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex = Integer.MIN_VALUE;
+
+        Bins(int maxBins) {
+            this.maxBins = maxBins;
+        }
+
+        boolean isEmpty() {
+            return minIndex > maxIndex;
+        }
+
+        int size() {
+            return isEmpty() ? 0 : maxIndex - minIndex + 1;
+        }
+
+        long get(int index) {
+            return counts[index - offset];
+        }
+
+        void add(int index, long n) {
+            if (isEmpty()) {
+                ensureRange(index, index);
+                minIndex = index;
+                maxIndex = index;
+            } else if (index < minIndex) {
+                if (maxIndex - index >= maxBins) {
+                    int lowest = maxIndex - maxBins + 1;
+                    collapseBelow(lowest);
+                    index = lowest;
+                }
+            } else if (index > maxIndex && index - minIndex >= maxBins) {
+                collapseBelow(index - maxBins + 1);
+            }
+
+            ensureRange(Math.min(index, minIndex), Math.max(index, maxIndex));
+            counts[index - offset] += n;
+            minIndex = Math.min(minIndex, index);
+            maxIndex = Math.max(maxIndex, index);
+        }
+
+        void addAll(Bins other) {
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                long n = other.get(i);
+                if (n > 0) {
+                    add(i, n);
+                }
+            }
+        }
+
+        /**
+         * Fold the counts of every bin below the given index into that bin
+         */
+        private void collapseBelow(int lowest) {
+            long collapsed = 0;
+            for (int i = minIndex; i < lowest && i <= maxIndex; i++) {
+                collapsed += counts[i - offset];
+                counts[i - offset] = 0;
+            }
+            minIndex = lowest;
+            maxIndex = Math.max(maxIndex, lowest);
+            ensureRange(lowest, maxIndex);
+            counts[lowest - offset] += collapsed;
+        }
+
+        /**
+         * Make the array cover [low, high] and the occupied bins. The array is
+         * re-based on the lowest occupied bin whenever it has to change, so it
+         * stays at most maxBins + GROWTH_SLACK long however far the values drift.
+         */
+        private void ensureRange(int low, int high) {
+            if (counts.length > 0 && low >= offset && high < offset + counts.length) {
+                return;
+            }
+            int liveLow = isEmpty() ? low : Math.min(low, minIndex);
+            int liveHigh = isEmpty() ? high : Math.max(high, maxIndex);
+            int width = liveHigh - liveLow + 1;
+            int slack = Math.max(0, Math.min(GROWTH_SLACK, maxBins + GROWTH_SLACK - width));
+            // Leave the slack on the side the range is growing towards
+            int newOffset;
+            if (counts.length == 0) {
+                newOffset = liveLow - slack / 2;
+            } else if (low < offset) {
+                newOffset = liveLow - slack;
+            } else {
+                newOffset = liveLow;
+            }
+            long[] resized = new long[width + slack];
+            if (!isEmpty() && counts.length > 0) {
+                // Occupied bins outside the old array (just raised by collapseBelow) hold nothing yet
+                int copyLow = Math.max(minIndex, offset);
+                int copyHigh = Math.min(maxIndex, offset + counts.length - 1);
+                if (copyLow <= copyHigh) {
+                    System.arraycopy(counts, copyLow - offset, resized, copyLow - newOffset, copyHigh - copyLow + 1);
+                }
+            }
+            counts = resized;
+            offset = newOffset;
+        }
+
+        void encode(Buffer out) {
+            int nonEmpty = 0;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                if (counts[i - offset] > 0) {
+                    nonEmpty++;
+                }
+            }
+            out.writeVarLong(nonEmpty);
+            int previous = 0;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                long n = counts[i - offset];
+                if (n > 0) {
+                    out.writeVarLong(zigzag(i - previous));
+                    out.writeVarLong(n);
+                    previous = i;
+                }
+            }
+        }
+
+        /**
+         * Read encoded bins, returning the total count they hold
+         */
+        long decode(Buffer in) {
+            int nonEmpty = (int) in.readVarLong();
+            long total = 0;
+            int index = 0;
+            for (int b = 0; b < nonEmpty; b++) {
+                index += (int) unzigzag(in.readVarLong());
+                long n = in.readVarLong();
+                add(index, n);
+                total += n;
+            }
+            return total;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Minimal growable byte buffer for the sketch encoding
+     */
+    private static class Buffer {
+        private byte[] data;
+        private int pos;
+
+        Buffer(int capacity) {
+            this.data = new byte[capacity];
+        }
+
+        Buffer(byte[] data) {
+            this.data = data;
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            data[pos++] = (byte) b;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                data[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                data[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[pos++] = (byte) value;
+        }
+
+        byte readByte() {
+            if (pos >= data.length) {
+                throw new IllegalArgumentException("Unexpected end of sketch");
+            }
+            return data[pos++];
+        }
+
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (readByte() & 0xFF);
+            }
+            return result;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in sketch");
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, pos);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (pos + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, pos + extra));
+            }
+        }
+    }
+}
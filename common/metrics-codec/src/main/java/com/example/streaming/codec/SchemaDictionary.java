@@ -0,0 +1,89 @@
+package com.example.streaming.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned dictionary of well-known strings for the binary wire format.
+ * Service, metric, host, region and status values found here are written as
+ * a one-byte code instead of their UTF-8 bytes.
+ *
+ * Versions are append-only: a new version copies the previous entries and
+ * adds new ones at the end, so codes written by older producers keep their
+ * meaning. Every record carries the dictionary version it was encoded with.
+ * Keep api-gateway/codec.js in sync when adding a version.
+ */
+public final class SchemaDictionary {
+    private static final List<SchemaDictionary> VERSIONS = new ArrayList<>();
+
+    static {
+        register(Arrays.asList(
+                // Metrics
+                "cpu_usage", "memory_usage", "disk_usage", "process_count",
+                "response_time", "error_count", "request_count",
+                // Services
+                "system-monitor", "api-gateway",
+                // Regions
+                "default-region", "us-east", "us-west", "eu-west", "eu-central", "ap-southeast",
+                // Service health status
+                "healthy", "warning", "critical", "unknown"));
+        register(Arrays.asList(
+                // Host collector metrics
+                "swap_usage", "thread_count",
+                "load_average_1m", "load_average_5m", "load_average_15m"));
+    }
+
+    public static final SchemaDictionary CURRENT = VERSIONS.get(VERSIONS.size() - 1);
+
+    private final int version;
+    private final String[] entries;
+    private final Map<String, Integer> codes;
+
+    private SchemaDictionary(int version, List<String> entries) {
+        this.version = version;
+        this.entries = entries.toArray(new String[0]);
+        this.codes = new HashMap<>();
+        for (int i = 0; i < this.entries.length; i++) {
+            codes.put(this.entries[i], i);
+        }
+    }
+
+    private static void register(List<String> added) {
+        List<String> entries = new ArrayList<>();
+        if (!VERSIONS.isEmpty()) {
+            entries.addAll(Arrays.asList(VERSIONS.get(VERSIONS.size() - 1).entries));
+        }
+        entries.addAll(added);
+        VERSIONS.add(new SchemaDictionary(VERSIONS.size() + 1, Collections.unmodifiableList(entries)));
+    }
+
+    public static SchemaDictionary forVersion(int version) {
+        if (version < 1 || version > VERSIONS.size()) {
+            throw new IllegalArgumentException("Unknown dictionary version: " + version);
+        }
+        return VERSIONS.get(version - 1);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Dictionary index of the value, or -1 when it has to be written as a literal
+     */
+    public int indexOf(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String get(int index) {
+        if (index < 0 || index >= entries.length) {
+            throw new IllegalArgumentException("Dictionary index " + index + " out of range for version " + version);
+        }
+        return entries[index];
+    }
+}
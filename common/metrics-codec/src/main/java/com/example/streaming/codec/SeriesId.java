@@ -0,0 +1,49 @@
+package com.example.streaming.codec;
+
+/**
+ * Compact 64-bit identifier of a (service, metric) series.
+ *
+ * Ids are a deterministic hash of the two names, so every producer, Flink
+ * subtask and reader derives the same id without a shared dictionary. Each
+ * name is hashed with its length prefixed, so no choice of separator
+ * characters inside names can make two different pairs hash the same input
+ * (unlike "service-metric" strings). For a million series the chance of any
+ * 64-bit collision is about 3 in 100 million.
+ */
+public final class SeriesId {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SeriesId() {
+    }
+
+    public static long of(String service, String metric) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, service);
+        hash = mix(hash, metric);
+        return finish(hash);
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xFFFFFFFFL) * FNV_PRIME;
+        }
+        hash = (hash ^ value.length()) * FNV_PRIME;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Avalanche the FNV result (MurmurHash3 finalizer) so ids spread evenly over key groups
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
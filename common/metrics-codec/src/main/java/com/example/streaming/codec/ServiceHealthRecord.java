@@ -0,0 +1,55 @@
+package com.example.streaming.codec;
+
+/**
+ * POJO representing a service health record on the service-health topic
+ */
+public class ServiceHealthRecord {
+    private String service;
+    private long timestamp;
+    private String status;
+    private int metricsCount;
+    private int anomaliesCount;
+    private double avgResponseTime;
+    private double avgCpuUsage;
+    private double avgMemoryUsage;
+
+    public ServiceHealthRecord() {
+    }
+
+    public ServiceHealthRecord(String service, long timestamp, String status,
+                               int metricsCount, int anomaliesCount, double avgResponseTime,
+                               double avgCpuUsage, double avgMemoryUsage) {
+        this.service = service;
+        this.timestamp = timestamp;
+        this.status = status;
+        this.metricsCount = metricsCount;
+        this.anomaliesCount = anomaliesCount;
+        this.avgResponseTime = avgResponseTime;
+        this.avgCpuUsage = avgCpuUsage;
+        this.avgMemoryUsage = avgMemoryUsage;
+    }
+
+    public String getService() { return service; }
+    public void setService(String service) { this.service = service; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public int getMetricsCount() { return metricsCount; }
+    public void setMetricsCount(int metricsCount) { this.metricsCount = metricsCount; }
+
+    public int getAnomaliesCount() { return anomaliesCount; }
+    public void setAnomaliesCount(int anomaliesCount) { this.anomaliesCount = anomaliesCount; }
+
+    public double getAvgResponseTime() { return avgResponseTime; }
+    public void setAvgResponseTime(double avgResponseTime) { this.avgResponseTime = avgResponseTime; }
+
+    public double getAvgCpuUsage() { return avgCpuUsage; }
+    public void setAvgCpuUsage(double avgCpuUsage) { this.avgCpuUsage = avgCpuUsage; }
+
+    public double getAvgMemoryUsage() { return avgMemoryUsage; }
+    public void setAvgMemoryUsage(double avgMemoryUsage) { this.avgMemoryUsage = avgMemoryUsage; }
+}
@@ -0,0 +1,47 @@
+package com.example.streaming.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Small direct-mapped cache from UTF-8 byte ranges to decoded Strings.
+ * Low-cardinality fields such as service, metric, host and region decode to
+ * the same String instance instead of allocating a new one per record.
+ * Not thread-safe.
+ */
+public class StringCache {
+    private static final int MAX_CACHED_LENGTH = 128;
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+
+    public StringCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.keys = new byte[size][];
+        this.values = new String[size];
+        this.mask = size - 1;
+    }
+
+    public String get(byte[] data, int offset, int length) {
+        if (length > MAX_CACHED_LENGTH) {
+            return new String(data, offset, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        byte[] key = keys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, data, offset, offset + length)) {
+            return values[slot];
+        }
+
+        String value = new String(data, offset, length, StandardCharsets.UTF_8);
+        keys[slot] = Arrays.copyOfRange(data, offset, offset + length);
+        values[slot] = value;
+        return value;
+    }
+}
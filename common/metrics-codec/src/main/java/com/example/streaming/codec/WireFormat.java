@@ -0,0 +1,52 @@
+package com.example.streaming.codec;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wire formats used for metric records on Kafka
+ */
+public enum WireFormat {
+    JSON,
+    BINARY;
+
+    public static WireFormat parse(String name) {
+        return WireFormat.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Detect the format of an encoded record. JSON records start with '{'
+     * (possibly after whitespace); binary records start with a format version byte.
+     */
+    public static WireFormat detect(byte[] data) {
+        for (byte b : data) {
+            if (b == '{') {
+                return JSON;
+            }
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return BINARY;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Parse a per-topic format mapping such as "metrics-data=json,metrics-bin=binary"
+     */
+    public static Map<String, WireFormat> parseTopicFormats(String spec) {
+        Map<String, WireFormat> formats = new HashMap<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return formats;
+        }
+
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid topic format entry: " + entry);
+            }
+            formats.put(parts[0].trim(), parse(parts[1]));
+        }
+        return formats;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.streaming.codec.kafka;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kafka deserializer for metric records that may be envelopes: every record
+ * decodes to the list of events it holds (a single event for plain records).
+ * Both wire formats are accepted; the format is detected per record.
+ */
+public class MetricBatchDeserializer implements Deserializer<List<MetricRecord>> {
+    // A KafkaConsumer is single-threaded, so one codec per deserializer is enough
+    private final MetricCodec codec = new MetricCodec(WireFormat.BINARY);
+
+    @Override
+    public List<MetricRecord> deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            List<MetricRecord> events = new ArrayList<>();
+            codec.decodeEach(data, MetricRecord.FACTORY, events::add);
+            return events;
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Unable to decode metric record from " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.streaming.codec.kafka;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Kafka deserializer for metric events. Both wire formats are accepted;
+ * the format is detected per record.
+ */
+public class MetricDeserializer implements Deserializer<MetricRecord> {
+    // A KafkaConsumer is single-threaded, so one codec per deserializer is enough
+    private final MetricCodec codec = new MetricCodec(WireFormat.BINARY);
+
+    @Override
+    public MetricRecord deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return codec.decode(data, MetricRecord.FACTORY);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Unable to decode metric record from " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.streaming.codec.kafka;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricFields;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Kafka serializer for metric events. The wire format is read from the
+ * "metrics.wire.format" producer property (json or binary, default binary).
+ */
+public class MetricSerializer implements Serializer<MetricFields> {
+    public static final String WIRE_FORMAT_CONFIG = "metrics.wire.format";
+
+    private WireFormat format = WireFormat.BINARY;
+
+    // KafkaProducer.send() may be called from many threads, and codecs are not thread-safe
+    private final ThreadLocal<MetricCodec> codecs = ThreadLocal.withInitial(() -> new MetricCodec(format));
+
+    public MetricSerializer() {
+    }
+
+    public MetricSerializer(WireFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configured = configs.get(WIRE_FORMAT_CONFIG);
+        if (configured != null) {
+            format = WireFormat.parse(configured.toString());
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, MetricFields data) {
+        return data == null ? null : codecs.get().encode(data);
+    }
+}
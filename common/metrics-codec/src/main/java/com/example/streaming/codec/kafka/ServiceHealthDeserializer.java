@@ -0,0 +1,27 @@
+package com.example.streaming.codec.kafka;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.ServiceHealthRecord;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Kafka deserializer for service health records in either wire format
+ */
+public class ServiceHealthDeserializer implements Deserializer<ServiceHealthRecord> {
+    private final MetricCodec codec = new MetricCodec(WireFormat.BINARY);
+
+    @Override
+    public ServiceHealthRecord deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return codec.decodeServiceHealth(data);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Unable to decode service health record from " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.streaming.codec.kafka;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.ServiceHealthRecord;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Kafka serializer for service health records. The wire format is read from
+ * the "metrics.wire.format" producer property (json or binary, default binary).
+ */
+public class ServiceHealthSerializer implements Serializer<ServiceHealthRecord> {
+    private WireFormat format = WireFormat.BINARY;
+
+    private final ThreadLocal<MetricCodec> codecs = ThreadLocal.withInitial(() -> new MetricCodec(format));
+
+    public ServiceHealthSerializer() {
+    }
+
+    public ServiceHealthSerializer(WireFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object configured = configs.get(MetricSerializer.WIRE_FORMAT_CONFIG);
+        if (configured != null) {
+            format = WireFormat.parse(configured.toString());
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, ServiceHealthRecord data) {
+        return data == null ? null : codecs.get().encode(data);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.streaming.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantileSketchTest {
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1};
+
+    @Test
+    void quantilesAreWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal, spanning several orders of magnitude like latencies do
+            values[i] = Math.exp(random.nextGaussian() * 2 + 3);
+            sketch.add(values[i]);
+        }
+
+        assertEquals(values.length, sketch.getCount());
+        assertQuantilesWithinAccuracy(values, sketch, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    void negativeAndZeroValuesAreCounted() {
+        double[] values = {-1000, -10, -0.5, 0, 0, 0.5, 10, 1000};
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        sketch.add(Double.NaN);
+
+        assertEquals(values.length, sketch.getCount());
+        assertQuantilesWithinAccuracy(values, sketch, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    void emptySketchHasNoQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+
+        assertTrue(sketch.isEmpty());
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    }
+
+    @Test
+    void mergeMatchesOneSketchOfAllValues() {
+        Random random = new Random(7);
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch merged = new QuantileSketch();
+        for (int part = 0; part < 10; part++) {
+            QuantileSketch window = new QuantileSketch();
+            for (int i = 0; i < 1_000; i++) {
+                // Each window has its own range, as consecutive windows of a drifting series do
+                double value = (part + 1) * 100 * random.nextDouble();
+                window.add(value);
+                all.add(value);
+            }
+            merged.merge(window);
+        }
+
+        assertEquals(all.getCount(), merged.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(all.quantile(q), merged.quantile(q), 0, "q=" + q);
+        }
+    }
+
+    @Test
+    void mergeRejectsDifferentAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 128);
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(0.02, 128)));
+    }
+
+    @Test
+    void driftingValuesCollapseLowBinsAndKeepUpperQuantiles() {
+        int maxBins = 64;
+        QuantileSketch sketch = new QuantileSketch(0.01, maxBins);
+        double[] values = new double[200_000];
+        for (int i = 0; i < values.length; i++) {
+            // Grows by about 20 orders of magnitude, far more than maxBins bins can cover
+            values[i] = Math.pow(10, i / 10_000.0);
+            sketch.add(values[i]);
+        }
+
+        assertEquals(values.length, sketch.getCount());
+        // Only the lowest bins are collapsed, so the top quantiles keep their accuracy
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[] {0.999, 1}) {
+            assertWithinAccuracy(exactQuantile(sorted, q), sketch.quantile(q), 0.01, q);
+        }
+        // Each sign keeps at most maxBins bins: version, accuracy, at most 3 varints
+        // of header, then at most 2 varints of up to 10 bytes per bin
+        assertTrue(sketch.encode().length <= 1 + 8 + 3 * 10 + maxBins * 20);
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        Random random = new Random(11);
+        QuantileSketch sketch = new QuantileSketch(0.02, 256);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(random.nextGaussian() * 50);
+        }
+        sketch.add(0);
+
+        byte[] encoded = sketch.encode();
+        QuantileSketch decoded = QuantileSketch.decode(encoded);
+
+        assertEquals(sketch.getRelativeAccuracy(), decoded.getRelativeAccuracy());
+        assertEquals(sketch.getCount(), decoded.getCount());
+        for (double q : QUANTILES) {
+            assertEquals(sketch.quantile(q), decoded.quantile(q), 0, "q=" + q);
+        }
+        assertArrayEquals(encoded, decoded.encode());
+    }
+
+    @Test
+    void decodeRejectsInvalidAccuracy() {
+        byte[] encoded = new QuantileSketch().encode();
+        long nan = Double.doubleToRawLongBits(Double.NaN);
+        for (int i = 0; i < 8; i++) {
+            encoded[1 + i] = (byte) (nan >>> (56 - 8 * i));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.decode(encoded));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(Double.NaN, 128));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(1, 128));
+    }
+
+    private static void assertQuantilesWithinAccuracy(double[] values, QuantileSketch sketch, double accuracy) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            assertWithinAccuracy(exactQuantile(sorted, q), sketch.quantile(q), accuracy, q);
+        }
+    }
+
+    private static void assertWithinAccuracy(double expected, double actual, double accuracy, double q) {
+        assertTrue(Math.abs(actual - expected) <= accuracy * Math.abs(expected) + 1e-9,
+                "q=" + q + ": expected " + expected + " within " + accuracy + ", got " + actual);
+    }
+
+    /**
+     * The sketch answers with the value at rank floor(q * (n - 1))
+     */
+    private static double exactQuantile(double[] sorted, double q) {
+        return sorted[(int) (q * (sorted.length - 1))];
+    }
+}
@@ -46,11 +46,16 @@ function App() {
         webSocketService.subscribe('/topic/anomalies', (message) => {
           try {
             console.log('Received anomaly message:', message.body);
-            const anomaly = JSON.parse(message.body);
+            const incident = JSON.parse(message.body);
+            const incidentId = incident.incident_id || incident.id;
             
+            // One entry per incident: replace it and move it to the front
             setMetricsData(prevData => ({
               ...prevData,
-              anomalies: [anomaly, ...prevData.anomalies].slice(0, 100) // Keep only the latest 100 anomalies
+              anomalies: [
+                incident,
+                ...prevData.anomalies.filter(a => (a.incident_id || a.id) !== incidentId)
+              ].slice(0, 100) // Keep only the latest 100 incidents
             }));
           } catch (error) {
             console.error('Error parsing anomaly message:', error);
@@ -15,12 +15,19 @@ const AnomalyDetection = ({ anomalies }) => {
     severities: [],
   });
   
+  // Each entry is an incident; resolved ones are listed apart and never as anomalies
+  const activeIncidents = (anomalies || []).filter(a => a.status !== 'resolved');
+  const resolvedIncidents = (anomalies || []).filter(a => a.status === 'resolved');
+  
   useEffect(() => {
-    if (anomalies && anomalies.length > 0) {
+    const active = (anomalies || []).filter(a => a.status !== 'resolved');
+    if (active.length === 0) {
+      setGroupedAnomalies({});
+    } else {
       // Extract available filter options
-      const services = [...new Set(anomalies.map(a => a.service))];
-      const metrics = [...new Set(anomalies.map(a => a.metric))];
-      const severities = [...new Set(anomalies.map(a => a.severity || 'high'))]; // Default to 'high' if not specified
+      const services = [...new Set(active.map(a => a.service))];
+      const metrics = [...new Set(active.map(a => a.metric))];
+      const severities = [...new Set(active.map(a => a.severity || 'high'))]; // Default to 'high' if not specified
       
       setAvailableFilters({
         services,
@@ -29,7 +36,7 @@ const AnomalyDetection = ({ anomalies }) => {
       });
       
       // Group anomalies by service and metric
-      const grouped = anomalies.reduce((acc, anomaly) => {
+      const grouped = active.reduce((acc, anomaly) => {
         const key = `${anomaly.service}-${anomaly.metric}`;
         
         if (!acc[key]) {
@@ -120,6 +127,7 @@ const AnomalyDetection = ({ anomalies }) => {
   // Get severity badge class
   const getSeverityBadgeClass = (severity) => {
     switch(severity || 'high') {
+      case 'critical':
       case 'high':
         return 'status-critical';
       case 'medium':
@@ -131,6 +139,20 @@ const AnomalyDetection = ({ anomalies }) => {
     }
   };
   
+  // Get incident status badge class
+  const getStatusBadgeClass = (status) => {
+    switch(status) {
+      case 'escalated':
+        return 'status-critical';
+      case 'ongoing':
+        return 'status-warning';
+      case 'resolved':
+        return 'status-healthy';
+      default:
+        return 'bg-blue-100 text-blue-800 px-2 py-1 rounded-full text-xs font-medium';
+    }
+  };
+  
   // Get unit label based on metric type
   const getMetricUnit = (metricName) => {
     switch(metricName) {
@@ -219,12 +241,12 @@ const AnomalyDetection = ({ anomalies }) => {
         </div>
       </div>
       
-      {anomalies.length === 0 ? (
+      {activeIncidents.length === 0 ? (
         <div className="bg-white p-6 rounded-lg shadow-sm border border-gray-100 text-center">
           <svg className="mx-auto h-12 w-12 text-gray-400" fill="none" viewBox="0 0 24 24" stroke="currentColor">
             <path strokeLinecap="round" strokeLinejoin="round" strokeWidth={1} d="M12 9v2m0 4h.01m-6.938 4h13.856c1.54 0 2.502-1.667 1.732-3L13.732 4c-.77-1.333-2.694-1.333-3.464 0L3.34 16c-.77 1.333.192 3 1.732 3z" />
           </svg>
-          <p className="mt-4 text-gray-500">No anomalies detected yet.</p>
+          <p className="mt-4 text-gray-500">No active anomalies.</p>
         </div>
       ) : filteredAnomalyGroups.length === 0 ? (
         <div className="bg-white p-6 rounded-lg shadow-sm border border-gray-100 text-center">
@@ -234,7 +256,7 @@ const AnomalyDetection = ({ anomalies }) => {
         <>
           <div className="mb-4 bg-gray-50 rounded-md p-3 shadow-inner">
             <p className="text-sm text-gray-600">
-              Showing {filteredAnomalyGroups.reduce((sum, group) => sum + group.anomalies.length, 0)} anomalies across {filteredAnomalyGroups.length} service-metric combinations
+              Showing {filteredAnomalyGroups.reduce((sum, group) => sum + group.anomalies.length, 0)} active incidents across {filteredAnomalyGroups.length} service-metric combinations
             </p>
           </div>
           
@@ -243,7 +265,7 @@ const AnomalyDetection = ({ anomalies }) => {
               <div className="p-4 border-b border-gray-100 flex justify-between items-center">
                 <h2 className="text-lg font-medium text-gray-900">{group.service} - {group.metric.replace('_', ' ')}</h2>
                 <span className="px-2.5 py-0.5 rounded-full text-xs font-medium bg-gray-100">
-                  {group.anomalies.length} anomalies
+                  {group.anomalies.reduce((sum, incident) => sum + (incident.anomaly_count || 1), 0)} anomalies
                 </span>
               </div>
               
@@ -334,11 +356,12 @@ const AnomalyDetection = ({ anomalies }) => {
                         <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Expected</th>
                         <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Deviation</th>
                         <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Severity</th>
+                        <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Status</th>
                       </tr>
                     </thead>
                     <tbody className="bg-white divide-y divide-gray-200">
                       {group.anomalies.map((anomaly, index) => (
-                        <tr key={index} className="hover:bg-gray-50">
+                        <tr key={anomaly.incident_id || index} className="hover:bg-gray-50">
                           <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">{formatTimestamp(anomaly.timestamp)}</td>
                           <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-900">
                             {anomaly.value.toFixed(2)}{getMetricUnit(group.metric)}
@@ -354,6 +377,11 @@ const AnomalyDetection = ({ anomalies }) => {
                               {anomaly.severity || 'high'}
                             </span>
                           </td>
+                          <td className="px-6 py-4 whitespace-nowrap">
+                            <span className={getStatusBadgeClass(anomaly.status)}>
+                              {anomaly.status || 'open'}
+                            </span>
+                          </td>
                         </tr>
                       ))}
                     </tbody>
@@ -364,6 +392,49 @@ const AnomalyDetection = ({ anomalies }) => {
           ))}
         </>
       )}
+      
+      {/* Resolved incidents */}
+      {resolvedIncidents.length > 0 && (
+        <div className="metric-card mb-6">
+          <div className="p-4 border-b border-gray-100">
+            <h2 className="text-lg font-medium text-gray-900">Recently Resolved Incidents</h2>
+          </div>
+          <div className="overflow-x-auto">
+            <table className="min-w-full divide-y divide-gray-200">
+              <thead className="bg-gray-50">
+                <tr>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Service</th>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Metric</th>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Started</th>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Resolved</th>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Anomalies</th>
+                  <th scope="col" className="px-6 py-3 text-left text-xs font-medium text-gray-500 uppercase tracking-wider">Peak Severity</th>
+                </tr>
+              </thead>
+              <tbody className="bg-white divide-y divide-gray-200">
+                {resolvedIncidents.map(incident => (
+                  <tr key={incident.incident_id} className="hover:bg-gray-50">
+                    <td className="px-6 py-4 whitespace-nowrap text-sm font-medium text-gray-900">{incident.service}</td>
+                    <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">{incident.metric.replace('_', ' ')}</td>
+                    <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">
+                      {incident.started_at ? formatTimestamp(incident.started_at) : 'N/A'}
+                    </td>
+                    <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">
+                      {incident.resolved_at ? formatTimestamp(incident.resolved_at) : 'N/A'}
+                    </td>
+                    <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">{incident.anomaly_count || 'N/A'}</td>
+                    <td className="px-6 py-4 whitespace-nowrap">
+                      <span className={getStatusBadgeClass('resolved')}>
+                        {incident.severity || 'high'}
+                      </span>
+                    </td>
+                  </tr>
+                ))}
+              </tbody>
+            </table>
+          </div>
+        </div>
+      )}
     </div>
   );
 };
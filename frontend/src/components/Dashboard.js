@@ -25,7 +25,7 @@ const Dashboard = ({ metricsData }) => {
     setServiceMetrics(metricsByService);
     
     // Get the most recent anomalies (up to 5)
-    setTopAnomalies(metricsData.anomalies.slice(0, 5));
+    setTopAnomalies(metricsData.anomalies.filter(a => a.status !== 'resolved').slice(0, 5));
   }, [metricsData]);
   
   // Format timestamp for display
@@ -305,7 +305,7 @@ const Dashboard = ({ metricsData }) => {
                 </thead>
                 <tbody className="bg-white divide-y divide-gray-200">
                   {topAnomalies.map((anomaly, index) => (
-                    <tr key={index} className="hover:bg-gray-50">
+                    <tr key={anomaly.incident_id || anomaly.id || index} className="hover:bg-gray-50">
                       <td className="px-6 py-4 whitespace-nowrap text-sm font-medium text-gray-900">{anomaly.service}</td>
                       <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">{anomaly.metric.replace('_', ' ')}</td>
                       <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">
@@ -316,7 +316,7 @@ const Dashboard = ({ metricsData }) => {
                       </td>
                       <td className="px-6 py-4 whitespace-nowrap text-sm text-gray-500">{formatTimestamp(anomaly.timestamp)}</td>
                       <td className="px-6 py-4 whitespace-nowrap">
-                        <span className={`${anomaly.severity === 'high' ? 'status-critical' : anomaly.severity === 'medium' ? 'status-warning' : 'status-healthy'}`}>
+                        <span className={`${anomaly.severity === 'critical' || anomaly.severity === 'high' ? 'status-critical' : anomaly.severity === 'medium' ? 'status-warning' : 'status-healthy'}`}>
                           {anomaly.severity}
                         </span>
                       </td>
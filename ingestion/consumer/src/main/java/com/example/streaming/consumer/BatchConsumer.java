@@ -0,0 +1,289 @@
+package com.example.streaming.consumer;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Poll loop that hands each poll batch to a pool of worker threads and
+ * commits offsets only once the whole batch is processed.
+ *
+ * Records are pinned to a worker by key (or by partition for unkeyed
+ * records), so records with the same key are handled in order by one
+ * thread. While a batch is in flight all partitions are paused and the
+ * loop keeps polling to stay in the group; they are resumed after the
+ * commit. On rebalance the in-flight batch is finished and committed
+ * before partitions are given up, so records are processed at least once.
+ *
+ * A batch is only committed when every record in it was handled. When a
+ * handler throws, its worker skips the rest of its share, the batch is not
+ * committed and its partitions are rewound to where the batch started, so
+ * the whole batch is polled again after a backoff; records handled before
+ * the failure are handled twice. After maxBatchAttempts failures in a row
+ * run() gives up with an exception, leaving the batch uncommitted.
+ */
+public class BatchConsumer<K, V> implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(BatchConsumer.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final Duration PAUSED_POLL_TIMEOUT = Duration.ofMillis(20);
+    private static final long MAX_RETRY_BACKOFF_MS = 10_000;
+
+    /**
+     * Processes a single record on a worker thread
+     */
+    @FunctionalInterface
+    public interface RecordHandler<K, V> {
+        void handle(ConsumerRecord<K, V> record) throws Exception;
+    }
+
+    private final Consumer<K, V> consumer;
+    private final Collection<String> topics;
+    private final RecordHandler<K, V> handler;
+    private final ExecutorService[] workers;
+    private final int maxBatchAttempts;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    // Batch currently being processed, the offsets to commit once it completes
+    // and the offsets to rewind to if it fails
+    private CompletableFuture<Void> inFlight;
+    private Map<TopicPartition, OffsetAndMetadata> pendingOffsets;
+    private Map<TopicPartition, Long> batchStartOffsets;
+    private int failedAttempts;
+
+    private long processedRecords;
+    private long committedBatches;
+    private long failedBatches;
+
+    public BatchConsumer(Consumer<K, V> consumer, Collection<String> topics, int workerThreads,
+                         int maxBatchAttempts, RecordHandler<K, V> handler) {
+        if (maxBatchAttempts < 1) {
+            throw new IllegalArgumentException("Max batch attempts must be positive: " + maxBatchAttempts);
+        }
+        this.consumer = consumer;
+        this.topics = topics;
+        this.handler = handler;
+        this.maxBatchAttempts = maxBatchAttempts;
+        this.workers = new ExecutorService[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            String name = "consumer-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, name));
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            consumer.subscribe(topics, new RebalanceListener());
+            logger.info("Consumer started with {} worker threads, listening to topics: {}", workers.length, topics);
+
+            while (running.get()) {
+                ConsumerRecords<K, V> records = poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    continue;
+                }
+
+                dispatch(records);
+                consumer.pause(consumer.assignment());
+
+                // Keep polling while paused so the consumer stays in the group; a rebalance
+                // in between completes the batch from the listener
+                while (inFlight != null && !inFlight.isDone()) {
+                    ConsumerRecords<K, V> unexpected = poll(PAUSED_POLL_TIMEOUT);
+                    rewind(unexpected);
+                }
+
+                if (inFlight != null && !completeBatch()) {
+                    if (failedAttempts >= maxBatchAttempts) {
+                        throw new IllegalStateException("Batch failed " + failedAttempts + " times in a row, giving up");
+                    }
+                    backOff();
+                }
+                consumer.resume(consumer.assignment());
+            }
+        } catch (WakeupException e) {
+            if (running.get()) {
+                throw e;
+            }
+        } finally {
+            if (inFlight != null) {
+                completeBatch();
+            }
+            shutdownWorkers();
+            consumer.close();
+            logger.info("Consumer stopped after {} records in {} committed batches ({} failed attempts)",
+                    processedRecords, committedBatches, failedBatches);
+        }
+    }
+
+    /**
+     * Stop polling; safe to call from another thread
+     */
+    public void shutdown() {
+        running.set(false);
+        consumer.wakeup();
+    }
+
+    private ConsumerRecords<K, V> poll(Duration timeout) {
+        while (true) {
+            try {
+                return consumer.poll(timeout);
+            } catch (RecordDeserializationException e) {
+                // Skip the undecodable record and carry on from the next offset
+                logger.error("Skipping undecodable record at {}@{}: {}", e.topicPartition(), e.offset(), e.getMessage());
+                consumer.seek(e.topicPartition(), e.offset() + 1);
+            }
+        }
+    }
+
+    private void dispatch(ConsumerRecords<K, V> records) {
+        List<List<ConsumerRecord<K, V>>> perWorker = new ArrayList<>(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            perWorker.add(new ArrayList<>());
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Map<TopicPartition, Long> startOffsets = new HashMap<>();
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<K, V>> partitionRecords = records.records(partition);
+            for (ConsumerRecord<K, V> record : partitionRecords) {
+                perWorker.get(workerFor(record)).add(record);
+            }
+            long lastOffset = partitionRecords.get(partitionRecords.size() - 1).offset();
+            offsets.put(partition, new OffsetAndMetadata(lastOffset + 1));
+            startOffsets.put(partition, partitionRecords.get(0).offset());
+        }
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < workers.length; i++) {
+            List<ConsumerRecord<K, V>> batch = perWorker.get(i);
+            if (!batch.isEmpty()) {
+                tasks.add(CompletableFuture.runAsync(() -> process(batch), workers[i]));
+            }
+        }
+
+        inFlight = CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0]));
+        pendingOffsets = offsets;
+        batchStartOffsets = startOffsets;
+        processedRecords += records.count();
+    }
+
+    private void process(List<ConsumerRecord<K, V>> batch) {
+        for (ConsumerRecord<K, V> record : batch) {
+            try {
+                handler.handle(record);
+            } catch (Exception e) {
+                // Stop here so later records of the same key are not handled ahead of this one
+                throw new IllegalStateException("Error processing record " + record.topic() + "-"
+                        + record.partition() + "@" + record.offset(), e);
+            }
+        }
+    }
+
+    private int workerFor(ConsumerRecord<K, V> record) {
+        int hash = record.key() != null
+                ? record.key().hashCode()
+                : Objects.hash(record.topic(), record.partition());
+        return Math.floorMod(hash, workers.length);
+    }
+
+    /**
+     * Wait for the in-flight batch and commit its offsets for partitions still owned.
+     * If any record failed nothing is committed and the owned partitions are rewound
+     * to the start of the batch; returns whether the batch was committed.
+     */
+    private boolean completeBatch() {
+        boolean succeeded;
+        try {
+            inFlight.join();
+            succeeded = true;
+        } catch (CompletionException e) {
+            succeeded = false;
+            failedAttempts++;
+            failedBatches++;
+            logger.error("Batch failed (attempt {} of {}), rewinding without commit",
+                    failedAttempts, maxBatchAttempts, e.getCause());
+        }
+
+        Set<TopicPartition> owned = consumer.assignment();
+        if (succeeded) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(pendingOffsets);
+            offsets.keySet().retainAll(owned);
+            if (!offsets.isEmpty()) {
+                consumer.commitSync(offsets);
+            }
+            committedBatches++;
+            failedAttempts = 0;
+        } else {
+            for (Map.Entry<TopicPartition, Long> start : batchStartOffsets.entrySet()) {
+                if (owned.contains(start.getKey())) {
+                    consumer.seek(start.getKey(), start.getValue());
+                }
+            }
+        }
+        inFlight = null;
+        pendingOffsets = null;
+        batchStartOffsets = null;
+        return succeeded;
+    }
+
+    /**
+     * Wait before the failed batch is polled again, longer after each failure
+     */
+    private void backOff() {
+        try {
+            Thread.sleep(Math.min(failedAttempts * 1000L, MAX_RETRY_BACKOFF_MS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records polled while paused come from partitions assigned mid-batch; seek
+     * back so they are delivered again with the next batch
+     */
+    private void rewind(ConsumerRecords<K, V> records) {
+        for (TopicPartition partition : records.partitions()) {
+            consumer.seek(partition, records.records(partition).get(0).offset());
+            consumer.pause(Collections.singleton(partition));
+        }
+    }
+
+    private void shutdownWorkers() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    private class RebalanceListener implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (inFlight != null) {
+                logger.info("Partitions revoked mid-batch, finishing batch before giving up {}", partitions);
+                completeBatch();
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (inFlight != null) {
+                consumer.pause(partitions);
+            }
+            logger.info("Partitions assigned: {}", partitions);
+        }
+    }
+}
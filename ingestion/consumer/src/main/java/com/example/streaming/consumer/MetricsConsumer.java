@@ -1,26 +1,28 @@
 package com.example.streaming.consumer;
 
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.kafka.MetricBatchDeserializer;
+
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.StringDeserializer;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MetricsConsumer {
     private static final Logger logger = LoggerFactory.getLogger(MetricsConsumer.class);
     private static final String BOOTSTRAP_SERVERS = System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "localhost:9092");
     private static final String TOPIC_NAME = System.getenv().getOrDefault("KAFKA_TOPIC", "metrics-data");
     private static final String GROUP_ID = System.getenv().getOrDefault("KAFKA_GROUP_ID", "metrics-consumer-group");
-    private static final AtomicBoolean running = new AtomicBoolean(true);
+    private static final int WORKER_THREADS = Integer.parseInt(System.getenv().getOrDefault("CONSUMER_WORKER_THREADS",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private static final String MAX_POLL_RECORDS = System.getenv().getOrDefault("CONSUMER_MAX_POLL_RECORDS", "500");
+    private static final int MAX_BATCH_ATTEMPTS = Integer.parseInt(System.getenv().getOrDefault("CONSUMER_MAX_BATCH_ATTEMPTS", "5"));
     
     public static void main(String[] args) {
         CountDownLatch latch = new CountDownLatch(1);
@@ -28,38 +30,31 @@ public class MetricsConsumer {
         Properties properties = new Properties();
         properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
         properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, MetricBatchDeserializer.class.getName());
         properties.put(ConsumerConfig.GROUP_ID_CONFIG, GROUP_ID);
         properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
-        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true");
-        properties.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, "1000");
+        // Offsets are committed by the BatchConsumer once each poll batch is processed
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, MAX_POLL_RECORDS);
+        
+        // Records are already decoded by the MetricBatchDeserializer; an envelope is unpacked
+        // on the worker its record key (service and host) is pinned to, so the events of
+        // each series are still processed in order
+        BatchConsumer<String, List<MetricRecord>> batchConsumer = new BatchConsumer<>(
+                new KafkaConsumer<>(properties),
+                Collections.singletonList(TOPIC_NAME),
+                WORKER_THREADS,
+                MAX_BATCH_ATTEMPTS,
+                record -> {
+                    for (MetricRecord metric : record.value()) {
+                        processMetric(metric);
+                    }
+                });
         
         // Create consumer thread
         Thread consumerThread = new Thread(() -> {
-            try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(properties)) {
-                consumer.subscribe(Collections.singletonList(TOPIC_NAME));
-                
-                logger.info("Consumer started, listening to topic: {}", TOPIC_NAME);
-                
-                while (running.get()) {
-                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
-                    
-                    for (ConsumerRecord<String, String> record : records) {
-                        try {
-                            String key = record.key();
-                            String value = record.value();
-                            
-                            logger.info("Received: key={}, value={}", key, value);
-                            
-                            // Parse the JSON and process metrics
-                            JSONObject metricData = new JSONObject(value);
-                            processMetric(metricData);
-                            
-                        } catch (Exception e) {
-                            logger.error("Error processing record", e);
-                        }
-                    }
-                }
+            try {
+                batchConsumer.run();
             } catch (Exception e) {
                 logger.error("Error in consumer", e);
             } finally {
@@ -73,7 +68,7 @@ public class MetricsConsumer {
         // Add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Caught shutdown hook");
-            running.set(false);
+            batchConsumer.shutdown();
             try {
                 latch.await();
             } catch (InterruptedException e) {
@@ -91,14 +86,14 @@ public class MetricsConsumer {
         }
     }
     
-    private static void processMetric(JSONObject metricData) {
-        String service = metricData.getString("service");
-        String metric = metricData.getString("metric");
-        double value = metricData.getDouble("value");
-        long timestamp = metricData.getLong("timestamp");
+    private static void processMetric(MetricRecord metricData) {
+        String service = metricData.getService();
+        String metric = metricData.getMetric();
+        double value = metricData.getValue();
+        long timestamp = metricData.getTimestamp();
         
         // In a real application, this would forward to a database, API, or messaging system
-        logger.info("Processed metric: service={}, metric={}, value={}, timestamp={}", 
+        logger.debug("Processed metric: service={}, metric={}, value={}, timestamp={}", 
                 service, metric, value, timestamp);
         
         // Check for anomalies (this is a simple example)
@@ -0,0 +1,48 @@
+package com.example.streaming.producer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fast random record ids in canonical version-4 UUID form.
+ *
+ * UUID.randomUUID() draws from a shared SecureRandom, which is slow and
+ * contended across sender threads. Ids only need to be unique, not
+ * unpredictable, so they are drawn from ThreadLocalRandom instead and
+ * formatted without going through java.util.UUID. The canonical form keeps
+ * them compact in the binary wire format.
+ */
+public final class IdGenerator {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private IdGenerator() {
+    }
+
+    public static String nextId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Set the version (4) and IETF variant bits like UUID.randomUUID()
+        long high = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long low = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+        char[] chars = new char[36];
+        hex(chars, 0, high >>> 32, 8);
+        chars[8] = '-';
+        hex(chars, 9, high >>> 16, 4);
+        chars[13] = '-';
+        hex(chars, 14, high, 4);
+        chars[18] = '-';
+        hex(chars, 19, low >>> 48, 4);
+        chars[23] = '-';
+        hex(chars, 24, low, 12);
+        return new String(chars);
+    }
+
+    /**
+     * Write the lowest digits of value as hex into chars starting at offset
+     */
+    private static void hex(char[] chars, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
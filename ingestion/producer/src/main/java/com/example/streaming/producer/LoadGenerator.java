@@ -0,0 +1,344 @@
+package com.example.streaming.producer;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.QuantileSketch;
+import com.example.streaming.codec.WireFormat;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic load mode for the producer: N sender threads publish metrics
+ * for a fixed set of series at a target rate, with injected anomalies, and
+ * report achieved throughput and send-latency percentiles.
+ *
+ * Enabled with PRODUCER_MODE=load; configured with LOAD_* environment variables.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final String[] METRICS = {
+            "cpu_usage", "memory_usage", "disk_usage", "process_count",
+            "response_time", "error_count", "request_count"
+    };
+    private static final String[] REGIONS = {"us-east", "us-west", "eu-west", "eu-central", "ap-southeast"};
+
+    /**
+     * Shape of the values generated around each series' baseline
+     */
+    public enum Distribution {
+        GAUSSIAN, UNIFORM, LOGNORMAL;
+
+        static Distribution parse(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final String bootstrapServers;
+    private final String topic;
+    private final WireFormat wireFormat;
+    private final int seriesCount;
+    private final long eventsPerSecond;
+    private final int senderThreads;
+    private final long durationSeconds;
+    private final Distribution distribution;
+    private final double anomalyRate;
+    private final long reportIntervalSeconds;
+    private final String acks;
+
+    private final Series[] series;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    // Released once run() has flushed, reported and closed the producer
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder anomalies = new LongAdder();
+
+    // Send-to-ack latency in microseconds, per report interval and overall; guarded by latencyLock
+    private final Object latencyLock = new Object();
+    private QuantileSketch intervalLatency = new QuantileSketch();
+    private final QuantileSketch totalLatency = new QuantileSketch();
+
+    public LoadGenerator(String bootstrapServers, String topic, WireFormat wireFormat, int seriesCount,
+                         long eventsPerSecond, int senderThreads, long durationSeconds, Distribution distribution,
+                         double anomalyRate, long reportIntervalSeconds, String acks) {
+        this.bootstrapServers = bootstrapServers;
+        this.topic = topic;
+        this.wireFormat = wireFormat;
+        this.seriesCount = seriesCount;
+        this.eventsPerSecond = eventsPerSecond;
+        this.senderThreads = senderThreads;
+        this.durationSeconds = durationSeconds;
+        this.distribution = distribution;
+        this.anomalyRate = anomalyRate;
+        this.reportIntervalSeconds = reportIntervalSeconds;
+        this.acks = acks;
+        this.series = createSeries(seriesCount);
+    }
+
+    public static LoadGenerator fromEnvironment(String bootstrapServers, String topic, WireFormat wireFormat) {
+        Map<String, String> env = System.getenv();
+        return new LoadGenerator(
+                bootstrapServers,
+                topic,
+                wireFormat,
+                Integer.parseInt(env.getOrDefault("LOAD_SERIES", "1000")),
+                Long.parseLong(env.getOrDefault("LOAD_EVENTS_PER_SECOND", "10000")),
+                Integer.parseInt(env.getOrDefault("LOAD_SENDER_THREADS", "4")),
+                Long.parseLong(env.getOrDefault("LOAD_DURATION_SECONDS", "0")),
+                Distribution.parse(env.getOrDefault("LOAD_DISTRIBUTION", "gaussian")),
+                Double.parseDouble(env.getOrDefault("LOAD_ANOMALY_RATE", "0.001")),
+                Long.parseLong(env.getOrDefault("LOAD_REPORT_INTERVAL_SECONDS", "5")),
+                env.getOrDefault("LOAD_ACKS", "1"));
+    }
+
+    /**
+     * Run until the configured duration elapses (or forever when it is 0), or
+     * until the JVM shuts down; the shutdown waits for the final flush and report
+     */
+    public void run() throws InterruptedException {
+        try {
+            generate();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void generate() throws InterruptedException {
+        logger.info("Starting load generator: {} series, {} events/s, {} sender threads, {} values, anomaly rate {}, format {}",
+                seriesCount, eventsPerSecond, senderThreads, distribution, anomalyRate, wireFormat);
+
+        try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(producerProperties())) {
+            CountDownLatch done = new CountDownLatch(senderThreads);
+            long startNanos = System.nanoTime();
+
+            for (int i = 0; i < senderThreads; i++) {
+                int threadIndex = i;
+                Thread sender = new Thread(() -> {
+                    try {
+                        send(producer, threadIndex);
+                    } catch (Exception e) {
+                        logger.error("Load sender {} failed", threadIndex, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "load-sender-" + i);
+                sender.setDaemon(true);
+                sender.start();
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                logger.info("Caught shutdown hook, stopping load senders");
+                running.set(false);
+                try {
+                    stopped.await();
+                } catch (InterruptedException e) {
+                    logger.error("Error waiting for load generator to stop", e);
+                }
+            }));
+
+            long lastSent = 0;
+            long lastReportNanos = startNanos;
+            long deadlineNanos = durationSeconds > 0 ? startNanos + TimeUnit.SECONDS.toNanos(durationSeconds) : Long.MAX_VALUE;
+            while (!done.await(reportIntervalSeconds, TimeUnit.SECONDS)) {
+                long now = System.nanoTime();
+                long total = sent.sum();
+                report("interval", total - lastSent, now - lastReportNanos, swapIntervalLatency());
+                lastSent = total;
+                lastReportNanos = now;
+                if (now >= deadlineNanos) {
+                    running.set(false);
+                }
+            }
+
+            producer.flush();
+            QuantileSketch overall;
+            synchronized (latencyLock) {
+                overall = new QuantileSketch().merge(totalLatency);
+            }
+            report("total", sent.sum(), System.nanoTime() - startNanos, overall);
+        }
+    }
+
+    private Properties producerProperties() {
+        Properties properties = new Properties();
+        properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        properties.put(ProducerConfig.ACKS_CONFIG, acks);
+        properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "all".equals(acks));
+        // Fill large compressed batches rather than sending a request per record
+        properties.put(ProducerConfig.LINGER_MS_CONFIG, Integer.parseInt(System.getenv().getOrDefault("LOAD_LINGER_MS", "5")));
+        properties.put(ProducerConfig.BATCH_SIZE_CONFIG, Integer.parseInt(System.getenv().getOrDefault("LOAD_BATCH_SIZE", "131072")));
+        properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, System.getenv().getOrDefault("LOAD_COMPRESSION", "lz4"));
+        properties.put(ProducerConfig.BUFFER_MEMORY_CONFIG, 128L * 1024 * 1024);
+        properties.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        return properties;
+    }
+
+    private void send(KafkaProducer<String, byte[]> producer, int threadIndex) {
+        MetricCodec codec = new MetricCodec(wireFormat);
+        Random random = ThreadLocalRandom.current();
+
+        // Each thread paces its share of the target rate against a fixed schedule
+        long threadRate = Math.max(1, eventsPerSecond / senderThreads);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / threadRate;
+        long nextSendNanos = System.nanoTime();
+        int seriesIndex = threadIndex;
+
+        while (running.get()) {
+            long now = System.nanoTime();
+            if (now < nextSendNanos) {
+                LockSupport.parkNanos(nextSendNanos - now);
+                continue;
+            }
+            // Do not burst to catch up after a long stall (e.g. a full producer buffer)
+            nextSendNanos = Math.max(nextSendNanos, now - TimeUnit.SECONDS.toNanos(1)) + intervalNanos;
+
+            Series s = series[seriesIndex];
+            seriesIndex = (seriesIndex + senderThreads) % series.length;
+
+            boolean anomaly = random.nextDouble() < anomalyRate;
+            double value = anomaly ? s.anomalousValue(random) : s.nextValue(distribution, random);
+            if (anomaly) {
+                anomalies.increment();
+            }
+
+            MetricRecord data = new MetricRecord(
+                    IdGenerator.nextId(),
+                    System.currentTimeMillis(),
+                    s.service,
+                    s.metric,
+                    value,
+                    s.host,
+                    s.region);
+
+            long sendNanos = System.nanoTime();
+            producer.send(new ProducerRecord<>(topic, s.key, codec.encode(data)), (metadata, exception) -> {
+                if (exception == null) {
+                    acked.increment();
+                    recordLatency((System.nanoTime() - sendNanos) / 1000);
+                } else {
+                    failed.increment();
+                    logger.debug("Load send failed", exception);
+                }
+            });
+            sent.increment();
+        }
+    }
+
+    private void recordLatency(long micros) {
+        synchronized (latencyLock) {
+            intervalLatency.add(micros);
+            totalLatency.add(micros);
+        }
+    }
+
+    private QuantileSketch swapIntervalLatency() {
+        synchronized (latencyLock) {
+            QuantileSketch latency = intervalLatency;
+            intervalLatency = new QuantileSketch();
+            return latency;
+        }
+    }
+
+    private void report(String label, long events, long elapsedNanos, QuantileSketch latency) {
+        double seconds = elapsedNanos / 1e9;
+        logger.info("Load {}: {} events in {} s ({} events/s, target {}), acked={}, failed={}, anomalies={}, "
+                        + "send latency ms p50={} p95={} p99={} max={}",
+                label, events, String.format("%.1f", seconds), String.format("%.0f", events / seconds), eventsPerSecond,
+                acked.sum(), failed.sum(), anomalies.sum(),
+                millis(latency, 0.50), millis(latency, 0.95), millis(latency, 0.99), millis(latency, 1.0));
+    }
+
+    private static String millis(QuantileSketch latency, double quantile) {
+        return latency.isEmpty() ? "-" : String.format("%.2f", latency.quantile(quantile) / 1000);
+    }
+
+    private static Series[] createSeries(int count) {
+        Random random = new Random(42);
+        int services = Math.max(1, count / METRICS.length);
+        Series[] series = new Series[count];
+        for (int i = 0; i < count; i++) {
+            String service = "load-service-" + (i / METRICS.length) % services;
+            String metric = METRICS[i % METRICS.length];
+            series[i] = new Series(service, metric, "load-host-" + (i % 64), REGIONS[i % REGIONS.length], random);
+        }
+        return series;
+    }
+
+    /**
+     * One synthetic service/metric series with a fixed baseline and spread
+     */
+    private static class Series {
+        private final String service;
+        private final String metric;
+        private final String host;
+        private final String region;
+        private final String key;
+        private final double baseline;
+        private final double spread;
+
+        Series(String service, String metric, String host, String region, Random random) {
+            this.service = service;
+            this.metric = metric;
+            this.host = host;
+            this.region = region;
+            this.key = service + "-" + metric;
+
+            switch (metric) {
+                case "response_time":
+                    baseline = 50 + random.nextDouble() * 250;
+                    break;
+                case "error_count":
+                    baseline = random.nextDouble() * 3;
+                    break;
+                case "request_count":
+                case "process_count":
+                    baseline = 100 + random.nextDouble() * 400;
+                    break;
+                default:
+                    baseline = 10 + random.nextDouble() * 70;
+                    break;
+            }
+            spread = Math.max(0.5, baseline * 0.05);
+        }
+
+        double nextValue(Distribution distribution, Random random) {
+            switch (distribution) {
+                case UNIFORM:
+                    return Math.max(0, baseline + (random.nextDouble() * 2 - 1) * spread * Math.sqrt(3));
+                case LOGNORMAL:
+                    // Median at the baseline with a long right tail, like latencies
+                    return baseline * Math.exp(random.nextGaussian() * 0.25);
+                default:
+                    return Math.max(0, baseline + random.nextGaussian() * spread);
+            }
+        }
+
+        /**
+         * A spike 6-10 spreads above the baseline
+         */
+        double anomalousValue(Random random) {
+            return baseline + (6 + random.nextDouble() * 4) * spread;
+        }
+    }
+}
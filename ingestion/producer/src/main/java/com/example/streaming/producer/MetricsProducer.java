@@ -1,24 +1,31 @@
 package com.example.streaming.producer;
 
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricEnvelope;
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.ServiceHealthRecord;
+import com.example.streaming.codec.WireFormat;
+import com.example.streaming.producer.collector.CollectorRunner;
+import com.example.streaming.producer.collector.MetricBatch;
+
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
-import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import oshi.SystemInfo;
-import oshi.hardware.CentralProcessor;
-import oshi.hardware.GlobalMemory;
-import oshi.hardware.HardwareAbstractionLayer;
 
 public class MetricsProducer {
     private static final Logger logger = LoggerFactory.getLogger(MetricsProducer.class);
@@ -26,112 +33,158 @@ public class MetricsProducer {
     private static final String TOPIC_NAME = System.getenv().getOrDefault("KAFKA_TOPIC", "metrics-data");
     private static final String SERVICE_NAME = System.getenv().getOrDefault("SERVICE_NAME", "system-monitor");
     private static final String REGION = System.getenv().getOrDefault("REGION", "default-region");
+    private static final WireFormat WIRE_FORMAT = WireFormat.parse(System.getenv().getOrDefault("METRICS_WIRE_FORMAT", "json"));
+    
+    private static final int SAMPLE_INTERVAL_SECONDS = Integer.parseInt(System.getenv().getOrDefault("SAMPLE_INTERVAL_SECONDS", "5"));
+    // Pack each tick into one envelope record instead of one record per metric
+    private static final boolean ENVELOPE_RECORDS = Boolean.parseBoolean(System.getenv().getOrDefault("METRICS_ENVELOPE", "true"));
+    private static final int SAMPLE_BUFFER_CAPACITY = Integer.parseInt(System.getenv().getOrDefault("SAMPLE_BUFFER_CAPACITY", "64"));
     
     private static final SystemInfo systemInfo = new SystemInfo();
-    private static final HardwareAbstractionLayer hardware = systemInfo.getHardware();
+    
+    // Static host metadata, resolved once instead of per record
+    private static final String HOST_NAME = resolveHostName();
+    
+    // Record key per metric name, and the envelope key covering all metrics of this host;
+    // only used from the sending (main) thread
+    private static final Map<String, String> metricKeys = new HashMap<>();
+    private static final String ENVELOPE_KEY = SERVICE_NAME + "-" + HOST_NAME;
+    private static final MetricEnvelope envelope = new MetricEnvelope();
+    
+    // Shared send callbacks, so sends do not allocate a lambda per record
+    private static final Callback METRIC_CALLBACK = (metadata, exception) -> {
+        if (exception == null) {
+            logger.debug("Metric sent: topic={}, partition={}, offset={}",
+                    metadata.topic(), metadata.partition(), metadata.offset());
+        } else {
+            logger.error("Error sending metric", exception);
+        }
+    };
+    private static final Callback HEALTH_CALLBACK = (metadata, exception) -> {
+        if (exception == null) {
+            logger.debug("Service health sent: topic={}, partition={}, offset={}",
+                    metadata.topic(), metadata.partition(), metadata.offset());
+        } else {
+            logger.error("Error sending service health", exception);
+        }
+    };
+    
+    // Only used from the sending (main) thread
+    private static final MetricCodec codec = new MetricCodec(WIRE_FORMAT);
     
     public static void main(String[] args) {
+        // Synthetic load mode for benchmarking the pipeline
+        if ("load".equalsIgnoreCase(System.getenv().getOrDefault("PRODUCER_MODE", "monitor"))) {
+            try {
+                LoadGenerator.fromEnvironment(BOOTSTRAP_SERVERS, TOPIC_NAME, WIRE_FORMAT).run();
+            } catch (InterruptedException e) {
+                logger.info("Load generator interrupted, shutting down");
+            }
+            return;
+        }
+        
         Properties properties = new Properties();
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS);
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
         properties.put(ProducerConfig.ACKS_CONFIG, "all");
         properties.put(ProducerConfig.RETRIES_CONFIG, 3);
         properties.put(ProducerConfig.LINGER_MS_CONFIG, 1);
         properties.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
         
         logger.info("Starting Metrics Producer with kafka bootstrap servers: {}", BOOTSTRAP_SERVERS);
-        logger.info("Service name: {}, Region: {}", SERVICE_NAME, REGION);
+        logger.info("Service name: {}, Region: {}, Host: {}, Wire format: {}, Envelope records: {}",
+                SERVICE_NAME, REGION, HOST_NAME, WIRE_FORMAT, ENVELOPE_RECORDS);
         
-        try (KafkaProducer<String, String> producer = new KafkaProducer<>(properties)) {
-            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-            
-            // Store previous CPU ticks for delta calculation
-            long[] prevTicks = hardware.getProcessor().getSystemCpuLoadTicks();
-            
-            scheduler.scheduleAtFixedRate(() -> {
-                try {
-                    // Get CPU processor
-                    CentralProcessor processor = hardware.getProcessor();
-                    
-                    // Get current CPU ticks
-                    long[] ticks = processor.getSystemCpuLoadTicks();
-                    
-                    // Calculate CPU usage based on tick deltas
-                    double cpuUsage = processor.getSystemCpuLoadBetweenTicks(prevTicks) * 100;
-                    
-                    // Update previous ticks for next calculation
-                    System.arraycopy(ticks, 0, prevTicks, 0, ticks.length);
-                    
-                    // Get memory info
-                    GlobalMemory memory = hardware.getMemory();
-                    long totalMemory = memory.getTotal();
-                    long availableMemory = memory.getAvailable();
-                    double memoryUsage = ((double)(totalMemory - availableMemory) / totalMemory) * 100;
-                    
-                    // Send CPU metric
-                    sendMetric(producer, "cpu_usage", cpuUsage);
-                    
-                    // Send memory metric
-                    sendMetric(producer, "memory_usage", memoryUsage);
-                    
-                    // Send disk usage metric
-                    double diskUsage = calculateDiskUsage();
-                    sendMetric(producer, "disk_usage", diskUsage);
-                    
-                    // Send process count metric
-                    int processCount = systemInfo.getOperatingSystem().getProcessCount();
-                    sendMetric(producer, "process_count", processCount);
-                    
-                    // Send service health data
-                    sendServiceHealth(producer, cpuUsage, memoryUsage);
-                    
-                    logger.info("Metrics sent - CPU: {:.2f}%, Memory: {:.2f}%, Disk: {:.2f}%, Processes: {}", 
-                            cpuUsage, memoryUsage, diskUsage, processCount);
-                    
-                } catch (Exception e) {
-                    logger.error("Error in scheduled metrics collection", e);
+        SampleRingBuffer<MetricBatch> samples = new SampleRingBuffer<>(SAMPLE_BUFFER_CAPACITY);
+        
+        // Collect on a separate thread so slow OSHI calls never delay sends
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CollectorRunner collectors = CollectorRunner.fromEnvironment(systemInfo, SAMPLE_INTERVAL_SECONDS);
+        sampler.scheduleAtFixedRate(() -> {
+            try {
+                MetricBatch batch = collectors.collect();
+                if (!batch.isEmpty() && !samples.offer(batch)) {
+                    logger.warn("Sample buffer full, dropped oldest sample ({} dropped so far)", samples.getDropped());
                 }
-            }, 0, 5, TimeUnit.SECONDS);
-            
-            // Keep the application running
-            Thread.sleep(Long.MAX_VALUE);
-            
+            } catch (Exception e) {
+                logger.error("Error in scheduled metrics collection", e);
+            }
+        }, 0, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        
+        try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(properties)) {
+            // The main thread is the only sender
+            double cpuUsage = 0;
+            double memoryUsage = 0;
+            while (true) {
+                MetricBatch batch = samples.take();
+                
+                if (ENVELOPE_RECORDS) {
+                    sendEnvelope(producer, batch);
+                } else {
+                    for (int i = 0; i < batch.size(); i++) {
+                        sendMetric(producer, batch.getMetric(i), batch.getValue(i), batch.getTimestamp());
+                    }
+                }
+                
+                // Health uses the latest readings even on ticks where CPU or memory was not sampled
+                cpuUsage = batch.valueOf("cpu_usage", cpuUsage);
+                memoryUsage = batch.valueOf("memory_usage", memoryUsage);
+                sendServiceHealth(producer, batch.getTimestamp(), cpuUsage, memoryUsage, batch.size());
+                
+                logger.info("Sent {} metrics - CPU: {}%, Memory: {}%", batch.size(),
+                        String.format("%.2f", cpuUsage), String.format("%.2f", memoryUsage));
+            }
         } catch (InterruptedException e) {
             logger.info("Producer interrupted, shutting down");
         } catch (Exception e) {
             logger.error("Unexpected error in metrics producer", e);
+        } finally {
+            sampler.shutdownNow();
         }
     }
     
-    private static void sendMetric(KafkaProducer<String, String> producer, String metricName, double value) {
+    /**
+     * Send all metrics of a tick as one envelope record. Every series of this host shares
+     * the envelope key, so each series still lands on a single partition in order.
+     */
+    private static void sendEnvelope(KafkaProducer<String, byte[]> producer, MetricBatch batch) {
         try {
-            JSONObject data = new JSONObject();
-            data.put("id", UUID.randomUUID().toString());
-            data.put("timestamp", System.currentTimeMillis());
-            data.put("service", SERVICE_NAME);
-            data.put("metric", metricName);
-            data.put("value", value);
-            data.put("host", systemInfo.getOperatingSystem().getNetworkParams().getHostName());
-            data.put("region", REGION);
-            
-            String key = SERVICE_NAME + "-" + metricName;
-            ProducerRecord<String, String> record = new ProducerRecord<>(TOPIC_NAME, key, data.toString());
+            envelope.reset(SERVICE_NAME, HOST_NAME, REGION, batch.getTimestamp());
+            for (int i = 0; i < batch.size(); i++) {
+                envelope.add(IdGenerator.nextId(), batch.getTimestamp(), batch.getMetric(i), batch.getValue(i));
+            }
+            producer.send(new ProducerRecord<>(TOPIC_NAME, ENVELOPE_KEY, codec.encode(envelope)), METRIC_CALLBACK);
+        } catch (Exception e) {
+            logger.error("Error creating/sending metric envelope of {} metrics", batch.size(), e);
+        }
+    }
+    
+    private static void sendMetric(KafkaProducer<String, byte[]> producer, String metricName,
+                                   double value, long timestamp) {
+        try {
+            String key = metricKeys.computeIfAbsent(metricName, name -> SERVICE_NAME + "-" + name);
+            MetricRecord data = new MetricRecord(
+                    IdGenerator.nextId(),
+                    timestamp,
+                    SERVICE_NAME,
+                    metricName,
+                    value,
+                    HOST_NAME,
+                    REGION);
             
-            producer.send(record, (metadata, exception) -> {
-                if (exception == null) {
-                    logger.debug("Metric sent: topic={}, partition={}, offset={}", 
-                            metadata.topic(), metadata.partition(), metadata.offset());
-                } else {
-                    logger.error("Error sending metric {}", metricName, exception);
-                }
-            });
+            producer.send(new ProducerRecord<>(TOPIC_NAME, key, codec.encode(data)), METRIC_CALLBACK);
         } catch (Exception e) {
             logger.error("Error creating/sending metric {}", metricName, e);
         }
     }
     
-    private static void sendServiceHealth(KafkaProducer<String, String> producer, double cpuUsage, double memoryUsage) {
+    private static void sendServiceHealth(KafkaProducer<String, byte[]> producer, long timestamp,
+                                          double cpuUsage, double memoryUsage, int metricsCount) {
         try {
             // Determine health status based on metrics
             String status = "healthy";
@@ -141,45 +194,28 @@ public class MetricsProducer {
                 status = "warning";
             }
             
-            JSONObject healthData = new JSONObject();
-            healthData.put("service", SERVICE_NAME);
-            healthData.put("timestamp", System.currentTimeMillis());
-            healthData.put("status", status);
-            healthData.put("metrics_count", 4); // CPU, memory, disk, process count
-            healthData.put("anomalies_count", 0);
-            healthData.put("avg_response_time", 0);
-            healthData.put("avg_cpu_usage", cpuUsage);
-            healthData.put("avg_memory_usage", memoryUsage);
+            ServiceHealthRecord healthData = new ServiceHealthRecord(
+                    SERVICE_NAME,
+                    timestamp,
+                    status,
+                    metricsCount,
+                    0,
+                    0,
+                    cpuUsage,
+                    memoryUsage);
             
-            String key = SERVICE_NAME;
-            ProducerRecord<String, String> record = new ProducerRecord<>("service-health", key, healthData.toString());
-            
-            producer.send(record, (metadata, exception) -> {
-                if (exception == null) {
-                    logger.debug("Service health sent: topic={}, partition={}, offset={}", 
-                            metadata.topic(), metadata.partition(), metadata.offset());
-                } else {
-                    logger.error("Error sending service health", exception);
-                }
-            });
+            producer.send(new ProducerRecord<>("service-health", SERVICE_NAME, codec.encode(healthData)), HEALTH_CALLBACK);
         } catch (Exception e) {
             logger.error("Error creating/sending service health", e);
         }
     }
     
-    private static double calculateDiskUsage() {
+    private static String resolveHostName() {
         try {
-            long totalSpace = systemInfo.getOperatingSystem().getFileSystem().getFileStores().get(0).getTotalSpace();
-            long freeSpace = systemInfo.getOperatingSystem().getFileSystem().getFileStores().get(0).getFreeSpace();
-            
-            if (totalSpace <= 0) {
-                return 0.0;
-            }
-            
-            return ((double)(totalSpace - freeSpace) / totalSpace) * 100;
+            return systemInfo.getOperatingSystem().getNetworkParams().getHostName();
         } catch (Exception e) {
-            logger.error("Error calculating disk usage", e);
-            return 0.0;
+            logger.warn("Could not resolve host name, using 'unknown'", e);
+            return "unknown";
         }
     }
-}
\ No newline at end of file
+}
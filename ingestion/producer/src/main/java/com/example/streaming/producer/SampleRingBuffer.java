@@ -0,0 +1,97 @@
+package com.example.streaming.producer;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer between a producing and a consuming thread.
+ *
+ * offer() never blocks: when the buffer is full the oldest element is
+ * overwritten and counted as dropped, so a slow consumer costs stale
+ * samples rather than stalling the producer. take() blocks until an
+ * element is available.
+ */
+public class SampleRingBuffer<T> {
+    private final Object[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // Index of the oldest element and number of elements, guarded by lock
+    private int head;
+    private int size;
+    private long dropped;
+
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * Append an element, overwriting the oldest one when full; returns false if one was dropped
+     */
+    public boolean offer(T element) {
+        lock.lock();
+        try {
+            boolean overwritten = size == slots.length;
+            if (overwritten) {
+                slots[head] = element;
+                head = (head + 1) % slots.length;
+                dropped++;
+            } else {
+                slots[(head + size) % slots.length] = element;
+                size++;
+            }
+            notEmpty.signal();
+            return !overwritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the oldest element, waiting until one is available
+     */
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return removeHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of elements overwritten before they were taken
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeHead() {
+        T element = (T) slots[head];
+        slots[head] = null;
+        head = (head + 1) % slots.length;
+        size--;
+        return element;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.streaming.producer.collector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oshi.SystemInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Runs the enabled collectors on a fixed tick and gathers everything
+ * sampled in one tick into a single MetricBatch.
+ *
+ * Each collector runs every ceil(interval / tick) ticks, where its interval
+ * is COLLECTOR_<NAME>_INTERVAL_SECONDS or its default. COLLECTORS selects
+ * collectors by name ("all" by default). A collector that fails to open is
+ * disabled; one that fails to collect is skipped for that tick.
+ */
+public class CollectorRunner {
+    private static final Logger logger = LoggerFactory.getLogger(CollectorRunner.class);
+
+    private final List<ScheduledCollector> collectors;
+    private long tick;
+
+    public CollectorRunner(List<ScheduledCollector> collectors) {
+        this.collectors = collectors;
+    }
+
+    /**
+     * Built-in and ServiceLoader-discovered collectors, opened and configured from the environment
+     */
+    public static CollectorRunner fromEnvironment(SystemInfo systemInfo, int tickSeconds) {
+        Map<String, String> env = System.getenv();
+        Set<String> enabled = new HashSet<>(Arrays.asList(
+                env.getOrDefault("COLLECTORS", "all").toLowerCase(Locale.ROOT).split("\\s*,\\s*")));
+
+        List<MetricCollector> available = new ArrayList<>(Arrays.asList(
+                new CpuCollector(),
+                new MemoryCollector(),
+                new FileStoreCollector(),
+                new NetworkCollector(),
+                new LoadAverageCollector(),
+                new ProcessCollector()));
+        for (MetricCollector collector : ServiceLoader.load(MetricCollector.class)) {
+            available.add(collector);
+        }
+
+        List<ScheduledCollector> scheduled = new ArrayList<>();
+        for (MetricCollector collector : available) {
+            String name = collector.getName();
+            if (!enabled.contains("all") && !enabled.contains(name)) {
+                continue;
+            }
+
+            int intervalSeconds = Integer.parseInt(env.getOrDefault(
+                    "COLLECTOR_" + name.toUpperCase(Locale.ROOT) + "_INTERVAL_SECONDS",
+                    String.valueOf(collector.getDefaultIntervalSeconds())));
+            int everyTicks = Math.max(1, (intervalSeconds + tickSeconds - 1) / tickSeconds);
+
+            try {
+                collector.open(systemInfo);
+            } catch (Exception e) {
+                logger.warn("Disabling collector {}: {}", name, e.getMessage());
+                continue;
+            }
+            scheduled.add(new ScheduledCollector(collector, everyTicks));
+            logger.info("Collector {} enabled, sampling every {} s", name, everyTicks * tickSeconds);
+        }
+        return new CollectorRunner(scheduled);
+    }
+
+    /**
+     * Run the collectors due in this tick
+     */
+    public MetricBatch collect() {
+        MetricBatch batch = new MetricBatch(System.currentTimeMillis());
+        for (ScheduledCollector scheduled : collectors) {
+            if (tick % scheduled.everyTicks != 0) {
+                continue;
+            }
+            try {
+                scheduled.collector.collect(batch);
+            } catch (Exception e) {
+                logger.error("Collector {} failed", scheduled.collector.getName(), e);
+            }
+        }
+        tick++;
+        return batch;
+    }
+
+    /**
+     * A collector and how many ticks apart it runs
+     */
+    public static class ScheduledCollector {
+        private final MetricCollector collector;
+        private final int everyTicks;
+
+        public ScheduledCollector(MetricCollector collector, int everyTicks) {
+            this.collector = collector;
+            this.everyTicks = everyTicks;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
+
+/**
+ * Overall CPU usage (cpu_usage) and usage per logical core (cpu_core_usage.N),
+ * as percentages over the interval since the previous sample
+ */
+public class CpuCollector implements MetricCollector {
+    private CentralProcessor processor;
+    private long[] prevTicks;
+    private long[][] prevCoreTicks;
+    private String[] coreMetrics;
+
+    @Override
+    public String getName() {
+        return "cpu";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 5;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        processor = systemInfo.getHardware().getProcessor();
+        prevTicks = processor.getSystemCpuLoadTicks();
+        prevCoreTicks = processor.getProcessorCpuLoadTicks();
+        coreMetrics = new String[prevCoreTicks.length];
+        for (int i = 0; i < coreMetrics.length; i++) {
+            coreMetrics[i] = "cpu_core_usage." + i;
+        }
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        batch.add("cpu_usage", processor.getSystemCpuLoadBetweenTicks(prevTicks) * 100);
+        prevTicks = processor.getSystemCpuLoadTicks();
+
+        double[] coreUsage = processor.getProcessorCpuLoadBetweenTicks(prevCoreTicks);
+        prevCoreTicks = processor.getProcessorCpuLoadTicks();
+        for (int i = 0; i < coreUsage.length && i < coreMetrics.length; i++) {
+            batch.add(coreMetrics[i], coreUsage[i] * 100);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.software.os.FileSystem;
+import oshi.software.os.OSFileStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Space usage in percent of every local file store (disk_usage.MOUNT, with
+ * the mount path verbatim), plus disk_usage for the first store.
+ *
+ * Every mount is its own series, and container hosts can mount many
+ * short-lived volumes, so only the mounts listed in COLLECTOR_FILESYSTEM_MOUNTS
+ * (comma-separated; any mount when unset) are reported per store, and at
+ * most COLLECTOR_FILESYSTEM_MAX_MOUNTS distinct mounts per host.
+ *
+ * Stores are listed once and refreshed in place; the list is only rebuilt
+ * when a store can no longer be refreshed (e.g. it was unmounted).
+ */
+public class FileStoreCollector implements MetricCollector {
+    private FileSystem fileSystem;
+    private final List<OSFileStore> stores = new ArrayList<>();
+    private final List<String> storeMetrics = new ArrayList<>();
+    private final SeriesNameFilter mounts = SeriesNameFilter.fromEnvironment(
+            "COLLECTOR_FILESYSTEM_MOUNTS", "COLLECTOR_FILESYSTEM_MAX_MOUNTS", 20);
+    private boolean stale = true;
+
+    @Override
+    public String getName() {
+        return "filesystem";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 30;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        fileSystem = systemInfo.getOperatingSystem().getFileSystem();
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        // Freshly listed stores already carry current values
+        boolean fresh = stale;
+        if (stale) {
+            listStores();
+        }
+
+        for (int i = 0; i < stores.size(); i++) {
+            OSFileStore store = stores.get(i);
+            if (!fresh && !store.updateAttributes()) {
+                stale = true;
+                continue;
+            }
+
+            long totalSpace = store.getTotalSpace();
+            if (totalSpace <= 0) {
+                continue;
+            }
+            double usage = ((double) (totalSpace - store.getFreeSpace()) / totalSpace) * 100;
+            if (i == 0) {
+                batch.add("disk_usage", usage);
+            }
+            if (storeMetrics.get(i) != null) {
+                batch.add(storeMetrics.get(i), usage);
+            }
+        }
+    }
+
+    private void listStores() {
+        stores.clear();
+        storeMetrics.clear();
+        for (OSFileStore store : fileSystem.getFileStores(true)) {
+            stores.add(store);
+            // Stores past the limit still count for disk_usage when listed first
+            storeMetrics.add(mounts.admit(store.getMount()) ? "disk_usage." + store.getMount() : null);
+        }
+        stale = false;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.hardware.CentralProcessor;
+
+/**
+ * System load averages (load_average_1m, load_average_5m, load_average_15m);
+ * reports nothing on platforms without load averages
+ */
+public class LoadAverageCollector implements MetricCollector {
+    private static final String[] METRICS = {"load_average_1m", "load_average_5m", "load_average_15m"};
+
+    private CentralProcessor processor;
+
+    @Override
+    public String getName() {
+        return "load";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 10;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        processor = systemInfo.getHardware().getProcessor();
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        double[] loadAverage = processor.getSystemLoadAverage(METRICS.length);
+        for (int i = 0; i < loadAverage.length && i < METRICS.length; i++) {
+            // Negative when the platform does not provide the value
+            if (loadAverage[i] >= 0) {
+                batch.add(METRICS[i], loadAverage[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.hardware.GlobalMemory;
+import oshi.hardware.VirtualMemory;
+
+/**
+ * Physical memory usage (memory_usage) and swap usage (swap_usage) in percent
+ */
+public class MemoryCollector implements MetricCollector {
+    private GlobalMemory memory;
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 5;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        memory = systemInfo.getHardware().getMemory();
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        long totalMemory = memory.getTotal();
+        if (totalMemory > 0) {
+            batch.add("memory_usage", ((double) (totalMemory - memory.getAvailable()) / totalMemory) * 100);
+        }
+
+        VirtualMemory swap = memory.getVirtualMemory();
+        long totalSwap = swap.getSwapTotal();
+        if (totalSwap > 0) {
+            batch.add("swap_usage", ((double) swap.getSwapUsed() / totalSwap) * 100);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.streaming.producer.collector;
+
+import java.util.Arrays;
+
+/**
+ * Metric names and values collected in one sampling tick, all sharing the
+ * tick's timestamp
+ */
+public class MetricBatch {
+    private final long timestamp;
+    private String[] metrics = new String[32];
+    private double[] values = new double[32];
+    private int size;
+
+    public MetricBatch(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void add(String metric, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        if (size == metrics.length) {
+            metrics = Arrays.copyOf(metrics, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        metrics[size] = metric;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getMetric(int index) {
+        return metrics[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Value of the named metric in this batch, or the fallback when it was not collected
+     */
+    public double valueOf(String metric, double fallback) {
+        for (int i = 0; i < size; i++) {
+            if (metrics[i].equals(metric)) {
+                return values[i];
+            }
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+
+/**
+ * Source of host metrics sampled by the producer.
+ *
+ * Built-in collectors are always available; additional implementations are
+ * discovered with ServiceLoader (list them in
+ * META-INF/services/com.example.streaming.producer.collector.MetricCollector).
+ * Implementations need a public no-argument constructor. open() is called
+ * before sampling starts and collect() only from the single sampler thread,
+ * so collectors may keep state between samples without synchronization.
+ */
+public interface MetricCollector {
+
+    /**
+     * Short lower-case name used in COLLECTORS and COLLECTOR_<NAME>_INTERVAL_SECONDS
+     */
+    String getName();
+
+    /**
+     * Sampling interval used unless overridden in the environment
+     */
+    int getDefaultIntervalSeconds();
+
+    /**
+     * Look up OSHI handles and take baseline readings; called once before the
+     * first collect. Throwing disables the collector.
+     */
+    void open(SystemInfo systemInfo) throws Exception;
+
+    /**
+     * Add the current readings to the batch of this tick
+     */
+    void collect(MetricBatch batch) throws Exception;
+}
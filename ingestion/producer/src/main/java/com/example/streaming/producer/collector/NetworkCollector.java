@@ -0,0 +1,88 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.hardware.NetworkIF;
+
+import java.util.List;
+
+/**
+ * Throughput and errors per network interface since the previous sample:
+ * network_rx_bytes_per_sec.NIC, network_tx_bytes_per_sec.NIC and
+ * network_errors.NIC (receive plus transmit errors)
+ */
+public class NetworkCollector implements MetricCollector {
+    private List<NetworkIF> interfaces;
+    private Counters[] previous;
+
+    @Override
+    public String getName() {
+        return "network";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 10;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        interfaces = systemInfo.getHardware().getNetworkIFs();
+        previous = new Counters[interfaces.size()];
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = new Counters(interfaces.get(i));
+        }
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        for (int i = 0; i < interfaces.size(); i++) {
+            NetworkIF nic = interfaces.get(i);
+            if (!nic.updateAttributes()) {
+                continue;
+            }
+
+            Counters prev = previous[i];
+            long elapsedMs = nic.getTimeStamp() - prev.timestamp;
+            if (elapsedMs > 0) {
+                double seconds = elapsedMs / 1000.0;
+                // Counters can reset (e.g. interface re-created); skip negative deltas
+                long received = nic.getBytesRecv() - prev.bytesRecv;
+                long sent = nic.getBytesSent() - prev.bytesSent;
+                long errors = nic.getInErrors() + nic.getOutErrors() - prev.errors;
+                if (received >= 0 && sent >= 0 && errors >= 0) {
+                    batch.add(prev.rxMetric, received / seconds);
+                    batch.add(prev.txMetric, sent / seconds);
+                    batch.add(prev.errorsMetric, errors);
+                }
+            }
+            prev.update(nic);
+        }
+    }
+
+    /**
+     * Counter values of one interface at the previous sample, with its metric names
+     */
+    private static class Counters {
+        private final String rxMetric;
+        private final String txMetric;
+        private final String errorsMetric;
+        private long timestamp;
+        private long bytesRecv;
+        private long bytesSent;
+        private long errors;
+
+        Counters(NetworkIF nic) {
+            this.rxMetric = "network_rx_bytes_per_sec." + nic.getName();
+            this.txMetric = "network_tx_bytes_per_sec." + nic.getName();
+            this.errorsMetric = "network_errors." + nic.getName();
+            update(nic);
+        }
+
+        void update(NetworkIF nic) {
+            timestamp = nic.getTimeStamp();
+            bytesRecv = nic.getBytesRecv();
+            bytesSent = nic.getBytesSent();
+            errors = nic.getInErrors() + nic.getOutErrors();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.streaming.producer.collector;
+
+import oshi.SystemInfo;
+import oshi.software.os.OSProcess;
+import oshi.software.os.OperatingSystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process and thread counts (process_count, thread_count) and the top
+ * processes by CPU (process_cpu_usage.NAME, percent of one core since the
+ * previous sample) and by resident memory (process_rss_bytes.NAME).
+ *
+ * Processes are grouped by name so series stay stable as PIDs come and go.
+ * The number of top processes reported is COLLECTOR_PROCESSES_TOP_N. Every
+ * process name is its own series, so only the names listed in
+ * COLLECTOR_PROCESSES_ALLOW (comma-separated; any name when unset) are
+ * ranked, and at most COLLECTOR_PROCESSES_MAX_NAMES distinct names are
+ * ever reported per host; the first names to reach the top are kept.
+ */
+public class ProcessCollector implements MetricCollector {
+    private final int topN = Integer.parseInt(System.getenv().getOrDefault("COLLECTOR_PROCESSES_TOP_N", "5"));
+    private final SeriesNameFilter names = SeriesNameFilter.fromEnvironment(
+            "COLLECTOR_PROCESSES_ALLOW", "COLLECTOR_PROCESSES_MAX_NAMES", 50);
+
+    private OperatingSystem operatingSystem;
+    private Map<Integer, OSProcess> previous = new HashMap<>();
+
+    @Override
+    public String getName() {
+        return "processes";
+    }
+
+    @Override
+    public int getDefaultIntervalSeconds() {
+        return 30;
+    }
+
+    @Override
+    public void open(SystemInfo systemInfo) {
+        operatingSystem = systemInfo.getOperatingSystem();
+    }
+
+    @Override
+    public void collect(MetricBatch batch) {
+        batch.add("process_count", operatingSystem.getProcessCount());
+        batch.add("thread_count", operatingSystem.getThreadCount());
+        if (topN <= 0) {
+            return;
+        }
+
+        List<OSProcess> processes = operatingSystem.getProcesses(
+                OperatingSystem.ProcessFiltering.ALL_PROCESSES, OperatingSystem.ProcessSorting.RSS_DESC, 0);
+
+        Map<Integer, OSProcess> current = new HashMap<>(processes.size() * 2);
+        Map<String, ProcessGroup> groups = new HashMap<>();
+        for (OSProcess process : processes) {
+            current.put(process.getProcessID(), process);
+            OSProcess prior = previous.get(process.getProcessID());
+            double cpu = prior != null
+                    ? process.getProcessCpuLoadBetweenTicks(prior)
+                    : process.getProcessCpuLoadCumulative();
+
+            ProcessGroup group = groups.computeIfAbsent(process.getName(), ProcessGroup::new);
+            group.cpuUsage += cpu * 100;
+            group.residentBytes += process.getResidentSetSize();
+        }
+        previous = current;
+
+        List<ProcessGroup> ranked = new ArrayList<>(groups.values());
+        ranked.sort((a, b) -> Double.compare(b.cpuUsage, a.cpuUsage));
+        int reported = 0;
+        for (int i = 0; reported < topN && i < ranked.size(); i++) {
+            ProcessGroup group = ranked.get(i);
+            if (names.admit(group.name)) {
+                batch.add("process_cpu_usage." + group.name, group.cpuUsage);
+                reported++;
+            }
+        }
+
+        ranked.sort((a, b) -> Long.compare(b.residentBytes, a.residentBytes));
+        reported = 0;
+        for (int i = 0; reported < topN && i < ranked.size(); i++) {
+            ProcessGroup group = ranked.get(i);
+            if (names.admit(group.name)) {
+                batch.add("process_rss_bytes." + group.name, group.residentBytes);
+                reported++;
+            }
+        }
+    }
+
+    /**
+     * Totals over all processes sharing a name
+     */
+    private static class ProcessGroup {
+        private final String name;
+        private double cpuUsage;
+        private long residentBytes;
+
+        ProcessGroup(String name) {
+            this.name = name;
+        }
+    }
+}
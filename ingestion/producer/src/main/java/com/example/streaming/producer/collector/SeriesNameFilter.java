@@ -0,0 +1,56 @@
+package com.example.streaming.producer.collector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Bounds the number of series a collector derives from names it does not
+ * control, such as process names or mount paths.
+ *
+ * Such metrics are named PREFIX.NAME, with NAME taken verbatim, so every
+ * new name is a new series downstream (state in the Flink job, partitions
+ * in Cassandra). A name is admitted if it is on the allow-list, when one is
+ * set, and either was admitted before or fewer than maxNames were; names
+ * are never forgotten, so the set of series a host reports stays stable.
+ */
+class SeriesNameFilter {
+    private final Set<String> allowed;
+    private final int maxNames;
+    private final Set<String> admitted = new HashSet<>();
+
+    /**
+     * Read the allow-list (comma-separated, empty for any name) from allowVariable
+     * and the cap on distinct names from maxVariable
+     */
+    static SeriesNameFilter fromEnvironment(String allowVariable, String maxVariable, int defaultMaxNames) {
+        String allowList = System.getenv().getOrDefault(allowVariable, "");
+        Set<String> allowed = Arrays.stream(allowList.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        return new SeriesNameFilter(allowed, Integer.parseInt(
+                System.getenv().getOrDefault(maxVariable, String.valueOf(defaultMaxNames))));
+    }
+
+    SeriesNameFilter(Set<String> allowed, int maxNames) {
+        this.allowed = Collections.unmodifiableSet(allowed);
+        this.maxNames = maxNames;
+    }
+
+    boolean admit(String name) {
+        if (!allowed.isEmpty() && !allowed.contains(name)) {
+            return false;
+        }
+        if (admitted.contains(name)) {
+            return true;
+        }
+        if (admitted.size() >= maxNames) {
+            return false;
+        }
+        admitted.add(name);
+        return true;
+    }
+}
@@ -55,10 +55,15 @@ curl -X PUT "http://$ELASTICSEARCH_HOST:$ELASTICSEARCH_PORT/metrics" -H 'Content
       "timestamp": { "type": "date" },
       "service": { "type": "keyword" },
       "metric": { "type": "keyword" },
+      "resolution": { "type": "keyword" },
       "min": { "type": "float" },
       "max": { "type": "float" },
       "avg": { "type": "float" },
       "count": { "type": "long" },
+      "stddev": { "type": "float" },
+      "p50": { "type": "float" },
+      "p95": { "type": "float" },
+      "p99": { "type": "float" },
       "window_start": { "type": "date" },
       "window_end": { "type": "date" }
     }
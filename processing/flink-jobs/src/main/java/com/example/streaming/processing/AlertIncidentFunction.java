@@ -0,0 +1,237 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.processing.MetricsProcessingJob.AlertEvent;
+import com.example.streaming.processing.MetricsProcessingJob.AnomalyEvent;
+
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Turns the per-event anomaly stream of a series into incident alerts.
+ *
+ * The first anomaly of a series opens an incident and emits an "open" alert.
+ * Further anomalies are folded into the incident: one whose deviation reaches
+ * a higher severity emits an "escalated" alert at once, otherwise at most one
+ * "ongoing" alert is emitted per cooldown, carrying the number of anomalies
+ * suppressed since the previous alert. When no anomaly has arrived for the
+ * resolve delay (in event time) the incident emits a "resolved" alert and its
+ * state is cleared.
+ */
+public class AlertIncidentFunction extends KeyedProcessFunction<Long, AnomalyEvent, AlertEvent> {
+    public static final String STATUS_OPEN = "open";
+    public static final String STATUS_ESCALATED = "escalated";
+    public static final String STATUS_ONGOING = "ongoing";
+    public static final String STATUS_RESOLVED = "resolved";
+
+    private static final String[] SEVERITIES = {"medium", "high", "critical"};
+
+    private final double zThreshold;
+    private final long cooldownMs;
+    private final long resolveAfterMs;
+
+    private transient ValueState<Incident> incidentState;
+
+    public AlertIncidentFunction(double zThreshold, long cooldownMs, long resolveAfterMs) {
+        this.zThreshold = zThreshold;
+        this.cooldownMs = cooldownMs;
+        this.resolveAfterMs = resolveAfterMs;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        incidentState = getRuntimeContext().getState(new ValueStateDescriptor<>("alert-incident", Incident.class));
+    }
+
+    @Override
+    public void processElement(AnomalyEvent anomaly, Context ctx, Collector<AlertEvent> out) throws Exception {
+        double deviation = Math.abs(anomaly.getDeviation());
+        int level = severityLevel(deviation);
+        Incident incident = incidentState.value();
+
+        if (incident == null) {
+            incident = new Incident();
+            incident.setIncidentId(anomaly.getId());
+            incident.setStartedAt(anomaly.getTimestamp());
+            incident.setSeverityLevel(level);
+            incident.setPeakDeviation(deviation);
+            incident.setAnomalyCount(1);
+            incident.setLastAlertAt(anomaly.getTimestamp());
+            out.collect(alert(anomaly, incident, STATUS_OPEN));
+        } else {
+            ctx.timerService().deleteEventTimeTimer(incident.getResolveTimer());
+            incident.setAnomalyCount(incident.getAnomalyCount() + 1);
+            incident.setPeakDeviation(Math.max(incident.getPeakDeviation(), deviation));
+
+            if (level > incident.getSeverityLevel()) {
+                incident.setSeverityLevel(level);
+                out.collect(alert(anomaly, incident, STATUS_ESCALATED));
+                incident.setLastAlertAt(anomaly.getTimestamp());
+                incident.setSuppressedCount(0);
+            } else if (anomaly.getTimestamp() - incident.getLastAlertAt() >= cooldownMs) {
+                out.collect(alert(anomaly, incident, STATUS_ONGOING));
+                incident.setLastAlertAt(anomaly.getTimestamp());
+                incident.setSuppressedCount(0);
+            } else {
+                incident.setSuppressedCount(incident.getSuppressedCount() + 1);
+            }
+        }
+
+        // Anomalies may arrive out of order; the incident resolves after the latest one
+        if (anomaly.getTimestamp() >= incident.getLastAnomaly()) {
+            incident.recordLatest(anomaly);
+        }
+        incident.setResolveTimer(incident.getLastAnomaly() + resolveAfterMs);
+        ctx.timerService().registerEventTimeTimer(incident.getResolveTimer());
+        incidentState.update(incident);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<AlertEvent> out) throws Exception {
+        Incident incident = incidentState.value();
+        if (incident == null || timestamp != incident.getResolveTimer()) {
+            return;
+        }
+
+        AlertEvent resolved = new AlertEvent();
+        resolved.setId(UUID.nameUUIDFromBytes(
+                (incident.getIncidentId() + ":" + STATUS_RESOLVED).getBytes(StandardCharsets.UTF_8)).toString());
+        resolved.setIncidentId(incident.getIncidentId());
+        resolved.setStatus(STATUS_RESOLVED);
+        resolved.setTimestamp(timestamp);
+        resolved.setService(incident.getService());
+        resolved.setMetric(incident.getMetric());
+        resolved.setHost(incident.getHost());
+        resolved.setRegion(incident.getRegion());
+        resolved.setValue(incident.getLastValue());
+        resolved.setExpectedValue(incident.getLastExpectedValue());
+        resolved.setSeverity(SEVERITIES[incident.getSeverityLevel()]);
+        resolved.setPeakDeviation(incident.getPeakDeviation());
+        resolved.setAnomalyCount(incident.getAnomalyCount());
+        resolved.setSuppressedCount(incident.getSuppressedCount());
+        resolved.setStartedAt(incident.getStartedAt());
+        resolved.setMessage(String.format("Resolved %s %s after %d anomalies (peak z-score %.1f)",
+                incident.getService(), incident.getMetric(), incident.getAnomalyCount(), incident.getPeakDeviation()));
+        out.collect(resolved);
+
+        incidentState.clear();
+    }
+
+    private int severityLevel(double deviation) {
+        if (deviation >= 4 * zThreshold) {
+            return 2;
+        }
+        return deviation >= 2 * zThreshold ? 1 : 0;
+    }
+
+    private static AlertEvent alert(AnomalyEvent anomaly, Incident incident, String status) {
+        AlertEvent alert = new AlertEvent();
+        alert.setId(anomaly.getId());
+        alert.setIncidentId(incident.getIncidentId());
+        alert.setStatus(status);
+        alert.setTimestamp(anomaly.getTimestamp());
+        alert.setService(anomaly.getService());
+        alert.setMetric(anomaly.getMetric());
+        alert.setHost(anomaly.getHost());
+        alert.setRegion(anomaly.getRegion());
+        alert.setValue(anomaly.getValue());
+        alert.setExpectedValue(anomaly.getExpectedValue());
+        alert.setDeviation(anomaly.getDeviation());
+        alert.setSeverity(SEVERITIES[incident.getSeverityLevel()]);
+        alert.setPeakDeviation(incident.getPeakDeviation());
+        alert.setAnomalyCount(incident.getAnomalyCount());
+        alert.setSuppressedCount(incident.getSuppressedCount());
+        alert.setStartedAt(incident.getStartedAt());
+        alert.setMessage(String.format("Anomaly detected for %s %s: %.2f (expected %.2f, z-score %.1f)",
+                anomaly.getService(), anomaly.getMetric(), anomaly.getValue(), anomaly.getExpectedValue(),
+                anomaly.getDeviation()));
+        return alert;
+    }
+
+    /**
+     * Open incident of a series, kept in keyed state until it resolves
+     */
+    public static class Incident {
+        private String incidentId;
+        private String service;
+        private String metric;
+        private String host;
+        private String region;
+        private long startedAt;
+        private long lastAnomaly;
+        private long lastAlertAt;
+        private long resolveTimer;
+        private double lastValue;
+        private double lastExpectedValue;
+        private double peakDeviation;
+        private int severityLevel;
+        private long anomalyCount;
+        private long suppressedCount;
+
+        public Incident() {
+        }
+
+        /**
+         * Record the latest anomaly and the details reported when the incident resolves
+         */
+        void recordLatest(AnomalyEvent anomaly) {
+            this.lastAnomaly = anomaly.getTimestamp();
+            this.service = anomaly.getService();
+            this.metric = anomaly.getMetric();
+            this.host = anomaly.getHost();
+            this.region = anomaly.getRegion();
+            this.lastValue = anomaly.getValue();
+            this.lastExpectedValue = anomaly.getExpectedValue();
+        }
+
+        public String getIncidentId() { return incidentId; }
+        public void setIncidentId(String incidentId) { this.incidentId = incidentId; }
+
+        public String getService() { return service; }
+        public void setService(String service) { this.service = service; }
+
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+
+        public String getRegion() { return region; }
+        public void setRegion(String region) { this.region = region; }
+
+        public long getStartedAt() { return startedAt; }
+        public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+
+        public long getLastAnomaly() { return lastAnomaly; }
+        public void setLastAnomaly(long lastAnomaly) { this.lastAnomaly = lastAnomaly; }
+
+        public long getLastAlertAt() { return lastAlertAt; }
+        public void setLastAlertAt(long lastAlertAt) { this.lastAlertAt = lastAlertAt; }
+
+        public long getResolveTimer() { return resolveTimer; }
+        public void setResolveTimer(long resolveTimer) { this.resolveTimer = resolveTimer; }
+
+        public double getLastValue() { return lastValue; }
+        public void setLastValue(double lastValue) { this.lastValue = lastValue; }
+
+        public double getLastExpectedValue() { return lastExpectedValue; }
+        public void setLastExpectedValue(double lastExpectedValue) { this.lastExpectedValue = lastExpectedValue; }
+
+        public double getPeakDeviation() { return peakDeviation; }
+        public void setPeakDeviation(double peakDeviation) { this.peakDeviation = peakDeviation; }
+
+        public int getSeverityLevel() { return severityLevel; }
+        public void setSeverityLevel(int severityLevel) { this.severityLevel = severityLevel; }
+
+        public long getAnomalyCount() { return anomalyCount; }
+        public void setAnomalyCount(long anomalyCount) { this.anomalyCount = anomalyCount; }
+
+        public long getSuppressedCount() { return suppressedCount; }
+        public void setSuppressedCount(long suppressedCount) { this.suppressedCount = suppressedCount; }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.JsonWriter;
+import com.example.streaming.processing.MetricsProcessingJob.AlertEvent;
+
+import org.apache.flink.api.common.serialization.SerializationSchema;
+
+/**
+ * Writes alerts for the alerts topic straight to JSON bytes. The field names
+ * of the earlier per-anomaly alerts are kept, so existing consumers keep
+ * working; incident fields are added alongside.
+ */
+public class AlertSerializationSchema implements SerializationSchema<AlertEvent> {
+    private transient JsonWriter jsonWriter;
+
+    @Override
+    public void open(InitializationContext context) {
+        jsonWriter = new JsonWriter(512);
+    }
+
+    @Override
+    public byte[] serialize(AlertEvent alert) {
+        if (jsonWriter == null) {
+            open(null);
+        }
+        return jsonWriter.reset().beginObject()
+                .field("id", alert.getId())
+                .field("timestamp", alert.getTimestamp())
+                .field("service", alert.getService())
+                .field("metric", alert.getMetric())
+                .field("value", alert.getValue())
+                .field("host", alert.getHost())
+                .field("region", alert.getRegion())
+                .field("expected_value", alert.getExpectedValue())
+                .field("deviation", alert.getDeviation())
+                .field("severity", alert.getSeverity())
+                .field("alert_type", "anomaly")
+                .field("alert_message", alert.getMessage())
+                .field("incident_id", alert.getIncidentId())
+                .field("status", alert.getStatus())
+                .field("started_at", alert.getStartedAt())
+                .field("peak_deviation", alert.getPeakDeviation())
+                .field("anomaly_count", alert.getAnomalyCount())
+                .field("suppressed_count", alert.getSuppressedCount())
+                .endObject()
+                .toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.processing.MetricsProcessingJob.AggregatedMetric;
+import com.example.streaming.processing.MetricsProcessingJob.AnomalyEvent;
+import com.example.streaming.processing.MetricsProcessingJob.MetricEvent;
+import com.example.streaming.storage.CassandraMetricsDAO;
+import com.example.streaming.storage.MetricResolution;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes a stream to Cassandra through CassandraMetricsDAO's batched write
+ * pipeline. Writes are asynchronous; every checkpoint waits until all writes
+ * issued before the barrier are acknowledged, so a completed checkpoint
+ * implies the data is persisted (at-least-once). A failed write fails the
+ * next invocation or checkpoint and the job restarts from the last checkpoint.
+ */
+public class CassandraMetricsSink<T> extends RichSinkFunction<T> implements CheckpointedFunction {
+    private static final Logger LOG = LoggerFactory.getLogger(CassandraMetricsSink.class);
+
+    /**
+     * Maps one element to its insert
+     */
+    @FunctionalInterface
+    public interface Writer<T> extends Serializable {
+        CompletionStage<Void> write(CassandraMetricsDAO dao, T element);
+    }
+
+    private final String host;
+    private final int port;
+    private final String datacenter;
+    private final String keyspace;
+    private final Writer<T> writer;
+
+    private transient CassandraMetricsDAO dao;
+    private transient AtomicReference<Throwable> asyncError;
+
+    public CassandraMetricsSink(String host, int port, String datacenter, String keyspace, Writer<T> writer) {
+        this.host = host;
+        this.port = port;
+        this.datacenter = datacenter;
+        this.keyspace = keyspace;
+        this.writer = writer;
+    }
+
+    /**
+     * Sink for raw_metrics
+     */
+    public static CassandraMetricsSink<MetricEvent> rawMetrics(String host, int port, String datacenter, String keyspace) {
+        return new CassandraMetricsSink<>(host, port, datacenter, keyspace,
+                (dao, event) -> dao.insertRawMetric(event.getService(), event.getMetric(),
+                        Instant.ofEpochMilli(event.getTimestamp()), event.getValue(),
+                        event.getHost(), event.getRegion(), event.getId()));
+    }
+
+    /**
+     * Sink for the aggregated_metrics_* table matching each aggregate's resolution
+     */
+    public static CassandraMetricsSink<AggregatedMetric> aggregatedMetrics(String host, int port, String datacenter, String keyspace) {
+        return new CassandraMetricsSink<>(host, port, datacenter, keyspace,
+                (dao, aggregate) -> dao.insertAggregatedMetric(MetricResolution.fromLabel(aggregate.getResolution()),
+                        aggregate.getService(), aggregate.getMetric(), Instant.ofEpochMilli(aggregate.getWindowStart()),
+                        aggregate.getMin(), aggregate.getMax(), aggregate.getAvg(), aggregate.getCount(),
+                        aggregate.getSketch()));
+    }
+
+    /**
+     * Sink for anomalies
+     */
+    public static CassandraMetricsSink<AnomalyEvent> anomalies(String host, int port, String datacenter, String keyspace) {
+        return new CassandraMetricsSink<>(host, port, datacenter, keyspace,
+                (dao, anomaly) -> dao.insertAnomaly(UUID.fromString(anomaly.getId()), anomaly.getService(),
+                        anomaly.getMetric(), Instant.ofEpochMilli(anomaly.getTimestamp()), anomaly.getValue(),
+                        anomaly.getExpectedValue(), anomaly.getDeviation(), anomaly.getSeverity()));
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        asyncError = new AtomicReference<>();
+        dao = new CassandraMetricsDAO(host, port, datacenter, keyspace);
+        getRuntimeContext().getMetricGroup().gauge("cassandraWriteQueueDepth", (Gauge<Integer>) dao::getWriteQueueDepth);
+    }
+
+    @Override
+    public void invoke(T value, Context context) throws Exception {
+        checkAsyncError();
+        writer.write(dao, value).whenComplete((result, error) -> {
+            if (error != null) {
+                asyncError.compareAndSet(null, error);
+            }
+        });
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        try {
+            dao.flush().toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            throw new Exception("Cassandra writes failed before checkpoint " + context.getCheckpointId(), e.getCause());
+        }
+        checkAsyncError();
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) {
+        // No state: pending writes are flushed on every checkpoint instead of being stored
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (dao != null) {
+            dao.close();
+            LOG.info("Cassandra sink for keyspace {} closed", keyspace);
+        }
+    }
+
+    private void checkAsyncError() throws Exception {
+        Throwable error = asyncError.get();
+        if (error != null) {
+            throw new Exception("Asynchronous Cassandra write failed", error);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.streaming.processing;
+
+import org.apache.flink.api.common.serialization.SerializationSchema;
+import org.apache.flink.connector.base.DeliveryGuarantee;
+import org.apache.flink.connector.kafka.sink.KafkaRecordSerializationSchema;
+import org.apache.flink.connector.kafka.sink.KafkaRecordSerializationSchemaBuilder;
+import org.apache.flink.connector.kafka.sink.KafkaSink;
+import org.apache.flink.connector.kafka.source.enumerator.initializer.OffsetsInitializer;
+
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Delivery guarantee of the Kafka sinks and starting position of the Kafka
+ * source, read from the environment.
+ *
+ * With DELIVERY_GUARANTEE=exactly_once the sinks write in Kafka transactions
+ * that commit when a checkpoint completes, so a restart from a checkpoint
+ * never duplicates processed metrics or alerts for read_committed consumers.
+ * Records become visible only at checkpoint completion, so end-to-end latency
+ * grows by up to the checkpoint interval. The source resumes from the offsets
+ * committed by the consumer group and falls back to KAFKA_OFFSET_RESET for
+ * partitions without a committed offset.
+ */
+public class DeliveryConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(DeliveryConfig.class);
+
+    // Brokers reject transactions longer than transaction.max.timeout.ms (15 minutes by default)
+    private static final long DEFAULT_TRANSACTION_TIMEOUT_MS = 900000;
+
+    private final DeliveryGuarantee guarantee;
+    private final String transactionalIdPrefix;
+    private final long transactionTimeoutMs;
+    private final String startingOffsets;
+    private final OffsetResetStrategy offsetReset;
+
+    public DeliveryConfig(DeliveryGuarantee guarantee, String transactionalIdPrefix, long transactionTimeoutMs,
+                          String startingOffsets, OffsetResetStrategy offsetReset) {
+        this.guarantee = guarantee;
+        this.transactionalIdPrefix = transactionalIdPrefix;
+        this.transactionTimeoutMs = transactionTimeoutMs;
+        this.startingOffsets = startingOffsets;
+        this.offsetReset = offsetReset;
+    }
+
+    public static DeliveryConfig fromEnvironment() {
+        Map<String, String> env = System.getenv();
+        return new DeliveryConfig(
+                parseGuarantee(env.getOrDefault("DELIVERY_GUARANTEE", "at_least_once")),
+                env.getOrDefault("KAFKA_TRANSACTIONAL_ID_PREFIX", "metrics-processor"),
+                Long.parseLong(env.getOrDefault("KAFKA_TRANSACTION_TIMEOUT_MS", String.valueOf(DEFAULT_TRANSACTION_TIMEOUT_MS))),
+                env.getOrDefault("KAFKA_STARTING_OFFSETS", "committed").toLowerCase(Locale.ROOT),
+                OffsetResetStrategy.valueOf(env.getOrDefault("KAFKA_OFFSET_RESET", "latest").toUpperCase(Locale.ROOT)));
+    }
+
+    public static DeliveryGuarantee parseGuarantee(String value) {
+        return DeliveryGuarantee.valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    public DeliveryGuarantee getGuarantee() {
+        return guarantee;
+    }
+
+    /**
+     * Where the source starts: committed (with the reset fallback), earliest or latest
+     */
+    public OffsetsInitializer startingOffsets() {
+        switch (startingOffsets) {
+            case "committed":
+                return OffsetsInitializer.committedOffsets(offsetReset);
+            case "earliest":
+                return OffsetsInitializer.earliest();
+            case "latest":
+                return OffsetsInitializer.latest();
+            default:
+                throw new IllegalArgumentException("Unknown KAFKA_STARTING_OFFSETS: " + startingOffsets);
+        }
+    }
+
+    /**
+     * Kafka sink for one topic with the configured guarantee. The sink name
+     * keeps transactional ids unique per sink; it must stay stable across
+     * restarts so lingering transactions of the previous run are aborted.
+     */
+    public <T> KafkaSink<T> createSink(String bootstrapServers, String topic, SerializationSchema<T> valueSchema,
+                                       String sinkName) {
+        return createSink(bootstrapServers, topic, null, valueSchema, sinkName);
+    }
+
+    /**
+     * Kafka sink with record keys, e.g. for compacted topics; a null key schema writes unkeyed records
+     */
+    public <T> KafkaSink<T> createSink(String bootstrapServers, String topic, SerializationSchema<T> keySchema,
+                                       SerializationSchema<T> valueSchema, String sinkName) {
+        Properties producerConfig = new Properties();
+        if (guarantee == DeliveryGuarantee.EXACTLY_ONCE) {
+            producerConfig.setProperty(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG, String.valueOf(transactionTimeoutMs));
+        }
+        KafkaRecordSerializationSchemaBuilder<T> recordSerializer = KafkaRecordSerializationSchema.builder()
+                .setTopic(topic)
+                .setValueSerializationSchema(valueSchema);
+        if (keySchema != null) {
+            recordSerializer.setKeySerializationSchema(keySchema);
+        }
+        return KafkaSink.<T>builder()
+                .setBootstrapServers(bootstrapServers)
+                .setRecordSerializer(recordSerializer.build())
+                .setDeliveryGuarantee(guarantee)
+                .setTransactionalIdPrefix(transactionalIdPrefix + "-" + sinkName)
+                .setKafkaProducerConfig(producerConfig)
+                .build();
+    }
+
+    /**
+     * A transaction stays open from one checkpoint until the next completes;
+     * if it times out first the broker aborts it and its records are lost.
+     */
+    public void validate(long checkpointIntervalMs, long checkpointTimeoutMs) {
+        if (guarantee != DeliveryGuarantee.EXACTLY_ONCE) {
+            return;
+        }
+        long longestTransactionMs = checkpointIntervalMs + checkpointTimeoutMs;
+        if (transactionTimeoutMs < longestTransactionMs) {
+            LOG.warn("KAFKA_TRANSACTION_TIMEOUT_MS {} is shorter than checkpoint interval plus timeout ({} ms); "
+                    + "transactions may be aborted before they commit", transactionTimeoutMs, longestTransactionMs);
+        }
+        LOG.info("Exactly-once Kafka sinks with transaction timeout {} ms", transactionTimeoutMs);
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.MetricRecord;
+import com.example.streaming.codec.QuantileSketch;
+import com.example.streaming.codec.WireFormat;
+import com.example.streaming.processing.MetricsProcessingJob.MetricEvent;
+
+import org.apache.flink.connector.base.DeliveryGuarantee;
+import org.apache.flink.connector.kafka.sink.KafkaSink;
+import org.apache.flink.core.execution.JobClient;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures what exactly-once delivery costs compared with at-least-once.
+ *
+ * For each guarantee in BENCH_DELIVERY_GUARANTEES a job writes synthetic
+ * metric events at BENCH_EVENTS_PER_SECOND to a fresh topic through the same
+ * Kafka sink the processing job uses, with the job's checkpoint settings. A
+ * read_committed consumer in the client reports the throughput it observes
+ * and the latency from event creation until the event is readable, which for
+ * transactional sinks includes waiting for the checkpoint that commits it.
+ *
+ * Run with: flink run -c com.example.streaming.processing.DeliveryGuaranteeBenchmark flink-metrics-processor.jar
+ */
+public class DeliveryGuaranteeBenchmark {
+    private static final Logger LOG = LoggerFactory.getLogger(DeliveryGuaranteeBenchmark.class);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> env = System.getenv();
+        String bootstrapServers = env.getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "kafka:9093");
+        String topicPrefix = env.getOrDefault("BENCH_TOPIC_PREFIX", "delivery-benchmark");
+        long eventsPerSecond = Long.parseLong(env.getOrDefault("BENCH_EVENTS_PER_SECOND", "20000"));
+        long durationSeconds = Long.parseLong(env.getOrDefault("BENCH_DURATION_SECONDS", "120"));
+        long warmupSeconds = Long.parseLong(env.getOrDefault("BENCH_WARMUP_SECONDS", "20"));
+        WireFormat format = WireFormat.parse(env.getOrDefault("BENCH_FORMAT", "binary"));
+
+        List<DeliveryGuarantee> guarantees = new ArrayList<>();
+        for (String value : env.getOrDefault("BENCH_DELIVERY_GUARANTEES", "at_least_once,exactly_once").split(",")) {
+            guarantees.add(DeliveryConfig.parseGuarantee(value));
+        }
+
+        StateBackendConfig stateBackendConfig = StateBackendConfig.fromEnvironment();
+        List<String> results = new ArrayList<>();
+        for (DeliveryGuarantee guarantee : guarantees) {
+            // A fresh topic and transactional id per run keeps runs from reading each other's records
+            String topic = topicPrefix + "-" + guarantee.name().toLowerCase(Locale.ROOT) + "-" + System.currentTimeMillis();
+            DeliveryConfig deliveryConfig = new DeliveryConfig(guarantee, topic,
+                    Long.parseLong(env.getOrDefault("KAFKA_TRANSACTION_TIMEOUT_MS", "900000")),
+                    "latest", OffsetResetStrategy.LATEST);
+            deliveryConfig.validate(stateBackendConfig.getCheckpointIntervalMs(), stateBackendConfig.getCheckpointTimeoutMs());
+            results.add(run(guarantee, stateBackendConfig, deliveryConfig, bootstrapServers, topic, format,
+                    eventsPerSecond, warmupSeconds, durationSeconds));
+        }
+
+        for (String result : results) {
+            LOG.info(result);
+        }
+    }
+
+    private static String run(DeliveryGuarantee guarantee, StateBackendConfig stateBackendConfig,
+                              DeliveryConfig deliveryConfig, String bootstrapServers, String topic, WireFormat format,
+                              long eventsPerSecond, long warmupSeconds, long durationSeconds) throws Exception {
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        stateBackendConfig.applyTo(env);
+
+        KafkaSink<MetricEvent> sink = deliveryConfig.createSink(
+                bootstrapServers, topic, new MetricEventSerializationSchema(format), "benchmark");
+        env.addSource(new PacedEventSource(eventsPerSecond))
+                .name("Benchmark Source")
+                .sinkTo(sink)
+                .name("Kafka Sink (" + guarantee + ")");
+
+        try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(consumerProperties(bootstrapServers))) {
+            consumer.subscribe(Collections.singletonList(topic));
+            JobClient job = env.executeAsync("Delivery Guarantee Benchmark (" + guarantee + ")");
+            LOG.info("Benchmark {} writing to {} at {} events/s", guarantee, topic, eventsPerSecond);
+
+            MetricCodec codec = new MetricCodec(format);
+            QuantileSketch latency = new QuantileSketch();
+            long measured = 0;
+            long startNanos = System.nanoTime();
+            long measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long deadlineNanos = measureFromNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+            try {
+                while (System.nanoTime() < deadlineNanos) {
+                    for (ConsumerRecord<byte[], byte[]> record : consumer.poll(Duration.ofMillis(200))) {
+                        if (System.nanoTime() < measureFromNanos) {
+                            continue;
+                        }
+                        MetricRecord event = codec.decode(record.value(), MetricRecord.FACTORY);
+                        latency.add(Math.max(0, System.currentTimeMillis() - event.getTimestamp()));
+                        measured++;
+                    }
+                }
+            } finally {
+                job.cancel().get(1, TimeUnit.MINUTES);
+            }
+
+            return String.format("Benchmark %s: %d events readable in %d s (%.0f events/s, target %d), "
+                            + "end-to-end latency ms p50=%s p95=%s p99=%s max=%s",
+                    guarantee, measured, durationSeconds, (double) measured / durationSeconds, eventsPerSecond,
+                    quantile(latency, 0.50), quantile(latency, 0.95), quantile(latency, 0.99), quantile(latency, 1.0));
+        }
+    }
+
+    private static Properties consumerProperties(String bootstrapServers) {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        // Only committed transactions are visible, as they are to downstream consumers
+        properties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        properties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        properties.put(ConsumerConfig.GROUP_ID_CONFIG, "delivery-benchmark-" + System.nanoTime());
+        return properties;
+    }
+
+    private static String quantile(QuantileSketch latency, double quantile) {
+        return latency.isEmpty() ? "-" : String.format("%.0f", latency.quantile(quantile));
+    }
+
+    /**
+     * Emits events stamped with their creation time at a fixed total rate,
+     * split evenly over the parallel subtasks
+     */
+    public static class PacedEventSource extends RichParallelSourceFunction<MetricEvent> {
+        private static final String[] METRICS = {"cpu_usage", "memory_usage", "disk_usage", "response_time"};
+
+        private final long eventsPerSecond;
+        private volatile boolean running = true;
+
+        public PacedEventSource(long eventsPerSecond) {
+            this.eventsPerSecond = eventsPerSecond;
+        }
+
+        @Override
+        public void run(SourceContext<MetricEvent> ctx) {
+            int subtask = getRuntimeContext().getIndexOfThisSubtask();
+            int subtasks = getRuntimeContext().getNumberOfParallelSubtasks();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, eventsPerSecond / subtasks);
+            long nextNanos = System.nanoTime();
+            long sequence = 0;
+
+            while (running) {
+                long now = System.nanoTime();
+                if (now < nextNanos) {
+                    LockSupport.parkNanos(nextNanos - now);
+                    continue;
+                }
+                nextNanos = Math.max(nextNanos, now - TimeUnit.SECONDS.toNanos(1)) + intervalNanos;
+
+                String service = "bench-service-" + (sequence % 100);
+                String metric = METRICS[(int) (sequence % METRICS.length)];
+                MetricEvent event = new MetricEvent(subtask + "-" + sequence, System.currentTimeMillis(),
+                        service, metric, sequence % 100, "bench-host-" + subtask, "bench");
+                synchronized (ctx.getCheckpointLock()) {
+                    ctx.collect(event);
+                }
+                sequence++;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            running = false;
+        }
+    }
+}
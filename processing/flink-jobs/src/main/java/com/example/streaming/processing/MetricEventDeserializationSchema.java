@@ -0,0 +1,69 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.WireFormat;
+import com.example.streaming.processing.MetricsProcessingJob.MetricEvent;
+
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.connector.kafka.source.reader.deserializer.KafkaRecordDeserializationSchema;
+import org.apache.flink.util.Collector;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes Kafka records straight into MetricEvent objects in a single pass.
+ * Envelope records are unpacked here into one MetricEvent per entry, so the
+ * rest of the job sees individual events. The wire format is selected per
+ * topic, falling back to a default format. Records that cannot be decoded
+ * are logged and skipped.
+ */
+public class MetricEventDeserializationSchema implements KafkaRecordDeserializationSchema<MetricEvent> {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricEventDeserializationSchema.class);
+
+    private final Map<String, WireFormat> topicFormats;
+    private final WireFormat defaultFormat;
+
+    private transient MetricCodec codec;
+    private transient long skippedRecords;
+
+    public MetricEventDeserializationSchema(Map<String, WireFormat> topicFormats, WireFormat defaultFormat) {
+        this.topicFormats = new HashMap<>(topicFormats);
+        this.defaultFormat = defaultFormat;
+    }
+
+    @Override
+    public void open(DeserializationSchema.InitializationContext context) {
+        codec = new MetricCodec(defaultFormat);
+    }
+
+    @Override
+    public void deserialize(ConsumerRecord<byte[], byte[]> record, Collector<MetricEvent> out) {
+        byte[] value = record.value();
+        if (value == null) {
+            return;
+        }
+
+        if (codec == null) {
+            open(null);
+        }
+
+        WireFormat format = topicFormats.getOrDefault(record.topic(), defaultFormat);
+        try {
+            codec.decodeEach(value, format, MetricEvent::new, out::collect);
+        } catch (RuntimeException e) {
+            skippedRecords++;
+            LOG.warn("Skipping undecodable {} record from {}-{}@{} ({} skipped so far): {}",
+                    format, record.topic(), record.partition(), record.offset(), skippedRecords, e.getMessage());
+        }
+    }
+
+    @Override
+    public TypeInformation<MetricEvent> getProducedType() {
+        return TypeInformation.of(MetricEvent.class);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.MetricCodec;
+import com.example.streaming.codec.WireFormat;
+import com.example.streaming.processing.MetricsProcessingJob.MetricEvent;
+
+import org.apache.flink.api.common.serialization.SerializationSchema;
+
+/**
+ * Encodes MetricEvent objects for the Kafka sinks in the configured wire format
+ */
+public class MetricEventSerializationSchema implements SerializationSchema<MetricEvent> {
+    private final WireFormat format;
+
+    private transient MetricCodec codec;
+
+    public MetricEventSerializationSchema(WireFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public void open(InitializationContext context) {
+        codec = new MetricCodec(format);
+    }
+
+    @Override
+    public byte[] serialize(MetricEvent event) {
+        if (codec == null) {
+            open(null);
+        }
+        return codec.encode(event);
+    }
+}
@@ -1,34 +1,39 @@
 package com.example.streaming.processing;
 
+import com.example.streaming.codec.MetricFields;
+import com.example.streaming.codec.QuantileSketch;
+import com.example.streaming.codec.SeriesId;
+import com.example.streaming.codec.WireFormat;
+
 import org.apache.flink.api.common.ExecutionConfig;
-import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.AggregateFunction;
 import org.apache.flink.api.common.restartstrategy.RestartStrategies;
-import org.apache.flink.api.common.serialization.SimpleStringSchema;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.StateTtlConfig;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
 import org.apache.flink.api.common.time.Time;
-import org.apache.flink.connector.base.DeliveryGuarantee;
-import org.apache.flink.connector.kafka.sink.KafkaRecordSerializationSchema;
+import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.flink.connector.kafka.sink.KafkaSink;
 import org.apache.flink.connector.kafka.source.KafkaSource;
-import org.apache.flink.connector.kafka.source.enumerator.initializer.OffsetsInitializer;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.DataStreamUtils;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.ProcessFunction;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
 import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
-import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
-import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkFunction;
-import org.apache.flink.streaming.connectors.elasticsearch.RequestIndexer;
+import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkBase;
+import org.apache.flink.streaming.connectors.elasticsearch.util.RetryRejectedExecutionFailureHandler;
 import org.apache.flink.streaming.connectors.elasticsearch7.ElasticsearchSink;
 import org.apache.flink.util.Collector;
 import org.apache.flink.util.OutputTag;
-import org.apache.flink.api.common.functions.RuntimeContext;
 
 import org.apache.http.HttpHost;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.client.Requests;
-import org.elasticsearch.action.ActionRequest;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -36,16 +41,27 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 public class MetricsProcessingJob {
     private static final Logger LOG = LoggerFactory.getLogger(MetricsProcessingJob.class);
     
-    // Side output for anomalies
-    private static final OutputTag<MetricEvent> anomalyOutputTag = new OutputTag<MetricEvent>("anomalies"){};
+    // Side outputs for anomalies, one-minute aggregates (upserts), their partials for the rollups,
+    // and events too late for any window
+    private static final OutputTag<AnomalyEvent> anomalyOutputTag = new OutputTag<AnomalyEvent>("anomalies"){};
+    private static final OutputTag<AggregatedMetric> aggregateOutputTag = new OutputTag<AggregatedMetric>("aggregates-1m"){};
+    private static final OutputTag<AggregatedMetric> partialOutputTag = new OutputTag<AggregatedMetric>("partials-1m"){};
+    private static final OutputTag<MetricEvent> lateEventOutputTag = new OutputTag<MetricEvent>("late-events"){};
+    
+    // Aggregation resolutions, matching MetricResolution labels in the storage layer
+    public static final String RESOLUTION_1MIN = "1m";
+    public static final String RESOLUTION_1HOUR = "1h";
+    public static final String RESOLUTION_1DAY = "1d";
+    // Sliding window of the dashboard, not stored in Cassandra
+    public static final String RESOLUTION_ROLLING = "rolling";
     
     public static void main(String[] args) throws Exception {
         // Set up the execution environment
@@ -57,226 +73,596 @@ public class MetricsProcessingJob {
                 Time.of(10, TimeUnit.SECONDS) // Delay between restarts
         ));
         
-        // Enable checkpointing for fault tolerance
-        env.enableCheckpointing(60000); // Checkpoint every 60 seconds
+        // State backend and checkpointing for fault tolerance
+        StateBackendConfig stateBackendConfig = StateBackendConfig.fromEnvironment();
+        stateBackendConfig.applyTo(env);
+        
+        // Delivery guarantee of the Kafka sinks and where the source starts
+        DeliveryConfig deliveryConfig = DeliveryConfig.fromEnvironment();
+        deliveryConfig.validate(stateBackendConfig.getCheckpointIntervalMs(), stateBackendConfig.getCheckpointTimeoutMs());
         env.getConfig().setUseSnapshotCompression(true);
+        // Accumulators carry quantile sketches; keep them compact in state
+        QuantileSketchSerializer.register(env.getConfig());
         
         // Configure Kafka source
         String bootstrapServers = System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "kafka:9093");
         String sourceTopic = System.getenv().getOrDefault("KAFKA_SOURCE_TOPIC", "metrics-data");
         String sinkTopic = System.getenv().getOrDefault("KAFKA_SINK_TOPIC", "processed-metrics");
         String alertsTopic = System.getenv().getOrDefault("KAFKA_ALERTS_TOPIC", "alerts");
+        String rollingTopic = System.getenv().getOrDefault("KAFKA_ROLLING_TOPIC", "rolling-metrics");
         String consumerGroup = System.getenv().getOrDefault("KAFKA_CONSUMER_GROUP", "flink-metrics-processor");
         
+        // Wire format of the source topics, optionally overridden per topic ("topic=json,other=binary")
+        WireFormat sourceFormat = WireFormat.parse(System.getenv().getOrDefault("KAFKA_SOURCE_FORMAT", "json"));
+        Map<String, WireFormat> topicFormats = WireFormat.parseTopicFormats(
+                System.getenv().getOrDefault("KAFKA_SOURCE_TOPIC_FORMATS", ""));
+        
         // Elasticsearch configuration
         String elasticsearchHost = System.getenv().getOrDefault("ELASTICSEARCH_HOST", "elasticsearch");
         int elasticsearchPort = Integer.parseInt(System.getenv().getOrDefault("ELASTICSEARCH_PORT", "9200"));
         String elasticsearchIndex = System.getenv().getOrDefault("ELASTICSEARCH_INDEX", "metrics");
+        int elasticsearchBulkMaxActions = Integer.parseInt(System.getenv().getOrDefault("ELASTICSEARCH_BULK_MAX_ACTIONS", "1000"));
+        int elasticsearchBulkMaxSizeMb = Integer.parseInt(System.getenv().getOrDefault("ELASTICSEARCH_BULK_MAX_SIZE_MB", "5"));
+        long elasticsearchBulkIntervalMs = Long.parseLong(System.getenv().getOrDefault("ELASTICSEARCH_BULK_INTERVAL_MS", "1000"));
+        int elasticsearchBackoffRetries = Integer.parseInt(System.getenv().getOrDefault("ELASTICSEARCH_BACKOFF_RETRIES", "5"));
+        long elasticsearchBackoffDelayMs = Long.parseLong(System.getenv().getOrDefault("ELASTICSEARCH_BACKOFF_DELAY_MS", "100"));
+        int elasticsearchSinkParallelism = Integer.parseInt(System.getenv().getOrDefault("ELASTICSEARCH_SINK_PARALLELISM",
+                String.valueOf(env.getParallelism())));
+        
+        // Cassandra configuration
+        String cassandraHost = System.getenv().getOrDefault("CASSANDRA_HOST", "cassandra");
+        int cassandraPort = Integer.parseInt(System.getenv().getOrDefault("CASSANDRA_PORT", "9042"));
+        String cassandraDatacenter = System.getenv().getOrDefault("CASSANDRA_DATACENTER", "datacenter1");
+        String cassandraKeyspace = System.getenv().getOrDefault("CASSANDRA_KEYSPACE", "metrics_analytics");
+        
+        // Anomaly detection configuration
+        double anomalyZThreshold = Double.parseDouble(System.getenv().getOrDefault("ANOMALY_Z_THRESHOLD", "3.0"));
+        double anomalyEwmaAlpha = Double.parseDouble(System.getenv().getOrDefault("ANOMALY_EWMA_ALPHA", "0.05"));
+        long anomalyWarmupEvents = Long.parseLong(System.getenv().getOrDefault("ANOMALY_WARMUP_EVENTS", "30"));
+        // Event-time tolerances: watermark delay, how long windows accept updates after firing,
+        // and when an idle Kafka partition is excluded from the watermark
+        long outOfOrdernessMs = Long.parseLong(System.getenv().getOrDefault("WATERMARK_OUT_OF_ORDERNESS_MS", "5000"));
+        long allowedLatenessMs = Long.parseLong(System.getenv().getOrDefault("ALLOWED_LATENESS_MS", "60000"));
+        long sourceIdlenessMs = Long.parseLong(System.getenv().getOrDefault("SOURCE_IDLENESS_MS", "30000"));
+        
+        // Rolling dashboard statistics: window length, how often it advances and sketch bins per pane
+        long rollingWindowMs = Long.parseLong(System.getenv().getOrDefault("ROLLING_WINDOW_MS", "300000"));
+        long rollingSlideMs = Long.parseLong(System.getenv().getOrDefault("ROLLING_SLIDE_MS", "10000"));
+        int rollingPaneSketchBins = Integer.parseInt(System.getenv().getOrDefault("ROLLING_PANE_SKETCH_BINS", "256"));
+        
+        // Alert incidents: repeat alerts at most once per cooldown, resolve after a quiet period
+        long alertCooldownMs = Long.parseLong(System.getenv().getOrDefault("ALERT_COOLDOWN_MS", "900000"));
+        long alertResolveAfterMs = Long.parseLong(System.getenv().getOrDefault("ALERT_RESOLVE_AFTER_MS", "300000"));
+        // Detector state of series that stop reporting expires after this long (0 keeps it forever)
+        long seriesStateTtlMs = TimeUnit.HOURS.toMillis(
+                Long.parseLong(System.getenv().getOrDefault("SERIES_STATE_TTL_HOURS", "24")));
         
         // Kafka source
-        KafkaSource<String> source = KafkaSource.<String>builder()
+        KafkaSource<MetricEvent> source = KafkaSource.<MetricEvent>builder()
                 .setBootstrapServers(bootstrapServers)
-                .setTopics(sourceTopic)
+                .setTopics(sourceTopic.split(","))
                 .setGroupId(consumerGroup)
-                .setStartingOffsets(OffsetsInitializer.latest())
-                .setValueOnlyDeserializer(new SimpleStringSchema())
+                .setStartingOffsets(deliveryConfig.startingOffsets())
+                .setDeserializer(new MetricEventDeserializationSchema(topicFormats, sourceFormat))
                 .build();
         
+        // Wire format of the processed-metrics topic
+        WireFormat sinkFormat = WireFormat.parse(System.getenv().getOrDefault("KAFKA_SINK_FORMAT", "json"));
+        
         // Kafka sinks
-        KafkaSink<String> processedSink = KafkaSink.<String>builder()
-                .setBootstrapServers(bootstrapServers)
-                .setRecordSerializer(KafkaRecordSerializationSchema.builder()
-                        .setTopic(sinkTopic)
-                        .setValueSerializationSchema(new SimpleStringSchema())
-                        .build())
-                .setDeliveryGuarantee(DeliveryGuarantee.AT_LEAST_ONCE)
-                .build();
+        KafkaSink<MetricEvent> processedSink = deliveryConfig.createSink(
+                bootstrapServers, sinkTopic, new MetricEventSerializationSchema(sinkFormat), "processed");
         
-        KafkaSink<String> alertsSink = KafkaSink.<String>builder()
-                .setBootstrapServers(bootstrapServers)
-                .setRecordSerializer(KafkaRecordSerializationSchema.builder()
-                        .setTopic(alertsTopic)
-                        .setValueSerializationSchema(new SimpleStringSchema())
-                        .build())
-                .setDeliveryGuarantee(DeliveryGuarantee.AT_LEAST_ONCE)
-                .build();
+        KafkaSink<AlertEvent> alertsSink = deliveryConfig.createSink(
+                bootstrapServers, alertsTopic, new AlertSerializationSchema(), "alerts");
         
-        // Read from Kafka
-        DataStream<String> inputStream = env.fromSource(
+        KafkaSink<AggregatedMetric> rollingSink = deliveryConfig.createSink(bootstrapServers, rollingTopic,
+                RollingMetricSerializationSchema.keySchema(), new RollingMetricSerializationSchema(), "rolling");
+        
+        // Read from Kafka, decoding each record into a MetricEvent exactly once. Watermarks are
+        // generated per partition; a partition without records for the idle timeout stops holding
+        // back the watermark until it receives data again.
+        DataStream<MetricEvent> metricStream = env.fromSource(
                 source,
-                org.apache.flink.api.common.eventtime.WatermarkStrategy.<String>forBoundedOutOfOrderness(Duration.ofSeconds(5))
-                        .withTimestampAssigner((event, timestamp) -> {
-                            JSONObject jsonEvent = new JSONObject(event);
-                            return jsonEvent.getLong("timestamp");
-                        }),
+                org.apache.flink.api.common.eventtime.WatermarkStrategy.<MetricEvent>forBoundedOutOfOrderness(Duration.ofMillis(outOfOrdernessMs))
+                        .withTimestampAssigner((event, timestamp) -> event.getTimestamp())
+                        .withIdleness(Duration.ofMillis(sourceIdlenessMs)),
                 "Kafka Source");
         
-        // Parse the JSON into MetricEvent objects
-        DataStream<MetricEvent> metricStream = inputStream.map(new MapFunction<String, MetricEvent>() {
-            @Override
-            public MetricEvent map(String value) throws Exception {
-                JSONObject json = new JSONObject(value);
-                return new MetricEvent(
-                        json.getString("id"),
-                        json.getLong("timestamp"),
-                        json.getString("service"),
-                        json.getString("metric"),
-                        json.getDouble("value"),
-                        json.getString("host"),
-                        json.getString("region")
-                );
-            }
-        });
-        
-        // Detect anomalies using a process function
+        // One keyed pass per event: anomaly detection against per-series streaming statistics
+        // and the incremental one-minute aggregation share a single shuffle. Keyed operators
+        // key on the compact series id assigned at decode time instead of concatenated names.
         SingleOutputStreamOperator<MetricEvent> processedStream = metricStream
-                .keyBy(event -> event.getService() + "-" + event.getMetric())
-                .process(new AnomalyDetectorProcess());
-        
-        // Extract anomalies using side output
-        DataStream<MetricEvent> anomalyStream = processedStream.getSideOutput(anomalyOutputTag);
-        
-        // Window operations for aggregations (every minute)
-        DataStream<AggregatedMetric> windowedAggregations = metricStream
-                .keyBy(event -> event.getService() + "-" + event.getMetric())
-                .window(TumblingEventTimeWindows.of(org.apache.flink.streaming.api.windowing.time.Time.minutes(1)))
-                .process(new MetricAggregator());
-        
-        // Convert back to JSON for Kafka sink
-        DataStream<String> processedJsonStream = processedStream.map(MetricEvent::toJsonString);
-        DataStream<String> anomalyJsonStream = anomalyStream.map(event -> {
-            JSONObject alertJson = new JSONObject(event.toJsonString());
-            alertJson.put("alert_type", "anomaly");
-            alertJson.put("alert_message", "Anomaly detected for " + event.getService() + " " + event.getMetric());
-            alertJson.put("severity", "high");
-            return alertJson.toString();
-        });
+                .keyBy(MetricEvent::getSeriesId, Types.LONG)
+                .process(new SeriesProcessFunction(anomalyZThreshold, anomalyEwmaAlpha, anomalyWarmupEvents,
+                        TimeUnit.MINUTES.toMillis(1), allowedLatenessMs, seriesStateTtlMs))
+                .name("Anomaly Detection and 1m Aggregation");
+        
+        // Extract anomalies, one-minute aggregates and late events using side outputs
+        DataStream<AnomalyEvent> anomalyStream = processedStream.getSideOutput(anomalyOutputTag);
+        DataStream<AggregatedMetric> windowedAggregations = processedStream.getSideOutput(aggregateOutputTag);
+        DataStream<AggregatedMetric> minutePartials = processedStream.getSideOutput(partialOutputTag);
+        DataStream<MetricEvent> lateEvents = processedStream.getSideOutput(lateEventOutputTag);
+        
+        // Roll the minute partials up into hourly and daily aggregates. Each partial counts each
+        // event once (late updates carry only the late values), so both rollups read the partials
+        // directly rather than cascading: a late re-firing of an hour would otherwise be counted
+        // twice by the day. Late firings re-emit the whole window, which the sinks upsert.
+        org.apache.flink.streaming.api.windowing.time.Time allowedLateness =
+                org.apache.flink.streaming.api.windowing.time.Time.milliseconds(allowedLatenessMs);
+        DataStream<AggregatedMetric> hourlyAggregations = minutePartials
+                .keyBy(AggregatedMetric::getSeriesId, Types.LONG)
+                .window(TumblingEventTimeWindows.of(org.apache.flink.streaming.api.windowing.time.Time.hours(1)))
+                .allowedLateness(allowedLateness)
+                .aggregate(new RollupAggregateFunction(), new MetricAggregator(RESOLUTION_1HOUR));
+        
+        DataStream<AggregatedMetric> dailyAggregations = minutePartials
+                .keyBy(AggregatedMetric::getSeriesId, Types.LONG)
+                .window(TumblingEventTimeWindows.of(org.apache.flink.streaming.api.windowing.time.Time.days(1)))
+                .allowedLateness(allowedLateness)
+                .aggregate(new RollupAggregateFunction(), new MetricAggregator(RESOLUTION_1DAY));
+        
+        // Rolling statistics for the dashboard from shared panes. The series operator's output is
+        // still partitioned by series id, so it is reinterpreted as keyed instead of shuffled again.
+        DataStream<AggregatedMetric> rollingAggregations = DataStreamUtils
+                .reinterpretAsKeyedStream(processedStream, MetricEvent::getSeriesId, Types.LONG)
+                .process(new SlidingPaneFunction(rollingWindowMs, rollingSlideMs, RESOLUTION_ROLLING, rollingPaneSketchBins))
+                .name("Rolling Statistics");
+        
+        // Fold anomalies into per-series incidents: one alert on open, escalation and per cooldown, one on resolve
+        DataStream<AlertEvent> alertStream = anomalyStream
+                .keyBy(AnomalyEvent::getSeriesId, Types.LONG)
+                .process(new AlertIncidentFunction(anomalyZThreshold, alertCooldownMs, alertResolveAfterMs))
+                .name("Alert Incidents");
         
         // Send processed data to Kafka
-        processedJsonStream.sinkTo(processedSink);
+        processedStream.sinkTo(processedSink);
         
         // Send alerts to Kafka
-        anomalyJsonStream.sinkTo(alertsSink);
+        alertStream.sinkTo(alertsSink);
+        
+        // Latest rolling statistics per series to the compacted topic read by the gateway
+        rollingAggregations.sinkTo(rollingSink);
+        
+        // Persist raw points, aggregates of every resolution and anomalies to Cassandra
+        processedStream
+                .addSink(CassandraMetricsSink.rawMetrics(cassandraHost, cassandraPort, cassandraDatacenter, cassandraKeyspace))
+                .name("Cassandra Raw Metrics Sink");
+        windowedAggregations
+                .union(hourlyAggregations, dailyAggregations)
+                .addSink(CassandraMetricsSink.aggregatedMetrics(cassandraHost, cassandraPort, cassandraDatacenter, cassandraKeyspace))
+                .name("Cassandra Aggregated Metrics Sink");
+        anomalyStream
+                .addSink(CassandraMetricsSink.anomalies(cassandraHost, cassandraPort, cassandraDatacenter, cassandraKeyspace))
+                .name("Cassandra Anomalies Sink");
+        // Events too late for any window skip the live topic and go straight to the raw table
+        lateEvents
+                .addSink(CassandraMetricsSink.rawMetrics(cassandraHost, cassandraPort, cassandraDatacenter, cassandraKeyspace))
+                .name("Cassandra Late Metrics Sink");
         
         // Send aggregated metrics to Elasticsearch
         List<HttpHost> httpHosts = new ArrayList<>();
         httpHosts.add(new HttpHost(elasticsearchHost, elasticsearchPort, "http"));
         
-        // Create the ElasticsearchSink
+        // Create the ElasticsearchSink, indexing each aggregate under a deterministic id
         ElasticsearchSink.Builder<AggregatedMetric> esSinkBuilder = new ElasticsearchSink.Builder<>(
-            httpHosts,
-            new ElasticsearchSinkFunction<AggregatedMetric>() {
-                @Override
-                public void process(AggregatedMetric element, RuntimeContext ctx, RequestIndexer indexer) {
-                    Map<String, Object> document = new HashMap<>();
-                    document.put("service", element.getService());
-                    document.put("metric", element.getMetric());
-                    document.put("timestamp", element.getTimestamp());
-                    document.put("min", element.getMin());
-                    document.put("max", element.getMax());
-                    document.put("avg", element.getAvg());
-                    document.put("count", element.getCount());
-                    document.put("window_start", element.getWindowStart());
-                    document.put("window_end", element.getWindowEnd());
-                    
-                    IndexRequest indexRequest = Requests.indexRequest()
-                            .index(elasticsearchIndex)
-                            .source(document);
-                    
-                    indexer.add(indexRequest);
-                }
-            }
-        );
-        
-        // Configure the sink with some settings
-        esSinkBuilder.setBulkFlushMaxActions(1); // Set this for testing, increase for production
-        
-        // Add the sink to the pipeline
-        windowedAggregations.addSink(esSinkBuilder.build());
+                httpHosts, new AggregatedMetricIndexer(elasticsearchIndex));
+        
+        // Bulk requests are flushed by whichever limit is hit first
+        esSinkBuilder.setBulkFlushMaxActions(elasticsearchBulkMaxActions);
+        esSinkBuilder.setBulkFlushMaxSizeMb(elasticsearchBulkMaxSizeMb);
+        esSinkBuilder.setBulkFlushInterval(elasticsearchBulkIntervalMs);
+        
+        // Back off exponentially on failed bulk requests and re-queue requests rejected with 429
+        esSinkBuilder.setBulkFlushBackoff(true);
+        esSinkBuilder.setBulkFlushBackoffType(ElasticsearchSinkBase.FlushBackoffType.EXPONENTIAL);
+        esSinkBuilder.setBulkFlushBackoffRetries(elasticsearchBackoffRetries);
+        esSinkBuilder.setBulkFlushBackoffDelay(elasticsearchBackoffDelayMs);
+        esSinkBuilder.setFailureHandler(new RetryRejectedExecutionFailureHandler());
+        
+        // Add the sink to the pipeline for every resolution
+        // Each sink subtask runs one bulk request at a time, so concurrency is set by its parallelism
+        windowedAggregations
+                .union(hourlyAggregations, dailyAggregations)
+                .addSink(esSinkBuilder.build())
+                .name("Elasticsearch Sink")
+                .setParallelism(elasticsearchSinkParallelism);
         
         // Execute the streaming pipeline
         env.execute("Metrics Processing Job");
     }
     
     /**
-     * Anomaly detector using ProcessFunction to properly handle side outputs
+     * Fused per-series operator: scores each event against an exponentially
+     * weighted mean and variance of its series, and folds it into the
+     * accumulator of its tumbling event-time window, in one pass over the
+     * keyed stream.
+     *
+     * Events are passed through to the main output. Events whose z-score
+     * exceeds the threshold go to the anomaly side output; when the watermark
+     * passes the end of a window its aggregate goes to the aggregate and
+     * partial side outputs with the window's max timestamp, like a window
+     * operator's result.
+     *
+     * A window keeps accepting events for the allowed lateness after it
+     * fires. Each late event emits the updated aggregate of its window (an
+     * upsert for storage) and a partial holding only the late value (for the
+     * rollups, so nothing is counted twice). Events later than that are not
+     * aggregated or scored, and go to the late-event side output (written to
+     * raw storage only) instead of the main output.
+     *
+     * Statistics of a series that has not been written for the state TTL
+     * expire, so the series warms up again if it comes back. Window
+     * accumulators need no TTL: each is removed by its timer.
      */
-    public static class AnomalyDetectorProcess extends ProcessFunction<MetricEvent, MetricEvent> {
+    public static class SeriesProcessFunction extends KeyedProcessFunction<Long, MetricEvent, MetricEvent> {
+        // Floor on the standard deviation relative to the mean, so near-constant series
+        // do not flag tiny fluctuations
+        private static final double MIN_RELATIVE_STDDEV = 0.01;
+        private static final double MIN_STDDEV = 1e-6;
+        
+        private final double zThreshold;
+        private final double alpha;
+        private final long warmupEvents;
+        private final long windowSizeMs;
+        private final long allowedLatenessMs;
+        private final long statisticsTtlMs;
+        
+        private transient ValueState<SeriesStatistics> statisticsState;
+        // Window accumulators by window start, kept until the allowed lateness has passed
+        private transient MapState<Long, MetricAccumulator> windowState;
+        private transient Counter lateUpdates;
+        private transient Counter lateEvents;
+        
+        public SeriesProcessFunction(double zThreshold, double alpha, long warmupEvents, long windowSizeMs,
+                                     long allowedLatenessMs, long statisticsTtlMs) {
+            this.zThreshold = zThreshold;
+            this.alpha = alpha;
+            this.warmupEvents = warmupEvents;
+            this.windowSizeMs = windowSizeMs;
+            this.allowedLatenessMs = allowedLatenessMs;
+            this.statisticsTtlMs = statisticsTtlMs;
+        }
+        
+        @Override
+        public void open(Configuration parameters) {
+            ValueStateDescriptor<SeriesStatistics> statisticsDescriptor =
+                    new ValueStateDescriptor<>("series-statistics", SeriesStatistics.class);
+            if (statisticsTtlMs > 0) {
+                // Expired entries are dropped by RocksDB compaction, or on access and
+                // in full snapshots with heap state
+                statisticsDescriptor.enableTimeToLive(StateTtlConfig.newBuilder(Time.milliseconds(statisticsTtlMs))
+                        .setUpdateType(StateTtlConfig.UpdateType.OnCreateAndWrite)
+                        .setStateVisibility(StateTtlConfig.StateVisibility.NeverReturnExpired)
+                        .cleanupInRocksdbCompactFilter(1000)
+                        .cleanupIncrementally(10, false)
+                        .cleanupFullSnapshot()
+                        .build());
+            }
+            statisticsState = getRuntimeContext().getState(statisticsDescriptor);
+            windowState = getRuntimeContext().getMapState(
+                    new MapStateDescriptor<>("window-accumulators", Long.class, MetricAccumulator.class));
+            lateUpdates = getRuntimeContext().getMetricGroup().counter("lateWindowUpdates");
+            lateEvents = getRuntimeContext().getMetricGroup().counter("lateEventsToStorage");
+        }
         
         @Override
         public void processElement(MetricEvent event, Context ctx, Collector<MetricEvent> out) throws Exception {
-            // Simple anomaly detection logic (in a real app, would be more sophisticated)
-            boolean isAnomaly = false;
+            if (aggregate(event, ctx)) {
+                // Events past the allowed lateness would raise alerts about data the windows no longer take
+                detectAnomaly(event, ctx);
+                // Main output with the original event
+                out.collect(event);
+            } else {
+                lateEvents.inc();
+                ctx.output(lateEventOutputTag, event);
+            }
+        }
+        
+        /**
+         * Fires the window ending at the timestamp and drops the window whose
+         * allowed lateness ends there; one timer can be both.
+         */
+        @Override
+        public void onTimer(long timestamp, OnTimerContext ctx, Collector<MetricEvent> out) throws Exception {
+            long firedWindowStart = timestamp - windowSizeMs + 1;
+            MetricAccumulator accumulator = windowState.get(firedWindowStart);
+            if (accumulator != null && accumulator.getCount() > 0) {
+                AggregatedMetric aggregate = MetricAggregator.toAggregate(ctx.getCurrentKey(), accumulator,
+                        firedWindowStart, firedWindowStart + windowSizeMs, RESOLUTION_1MIN);
+                ctx.output(aggregateOutputTag, aggregate);
+                ctx.output(partialOutputTag, aggregate);
+            }
+            windowState.remove(timestamp - allowedLatenessMs - windowSizeMs + 1);
+        }
+        
+        private void detectAnomaly(MetricEvent event, Context ctx) throws Exception {
+            double value = event.getValue();
+            SeriesStatistics stats = statisticsState.value();
             
-            // Detect anomalies based on metric type and threshold
-            if (event.getMetric().equals("cpu_usage") && event.getValue() > 90) {
-                isAnomaly = true;
-            } else if (event.getMetric().equals("memory_usage") && event.getValue() > 85) {
-                isAnomaly = true;
-            } else if (event.getMetric().equals("response_time") && event.getValue() > 500) {
-                isAnomaly = true;
-            } else if (event.getMetric().equals("error_count") && event.getValue() > 5) {
-                isAnomaly = true;
+            if (stats == null) {
+                stats = new SeriesStatistics();
+                stats.setMean(value);
+            } else {
+                double expected = stats.getMean();
+                double stddev = Math.max(Math.sqrt(stats.getVariance()),
+                        Math.max(MIN_STDDEV, Math.abs(expected) * MIN_RELATIVE_STDDEV));
+                double zScore = (value - expected) / stddev;
+                
+                if (stats.getCount() >= warmupEvents && Math.abs(zScore) >= zThreshold) {
+                    ctx.output(anomalyOutputTag, new AnomalyEvent(event, expected, zScore, severity(zScore)));
+                }
+                
+                // Incremental EWMA update of mean and variance
+                double diff = value - expected;
+                double increment = alpha * diff;
+                stats.setMean(expected + increment);
+                stats.setVariance((1 - alpha) * (stats.getVariance() + diff * increment));
             }
             
-            if (isAnomaly) {
-                // Output to side output for anomalies
-                ctx.output(anomalyOutputTag, event);
+            stats.setCount(stats.getCount() + 1);
+            statisticsState.update(stats);
+        }
+        
+        /**
+         * Add the event to its window; false when the window's allowed lateness has passed
+         */
+        private boolean aggregate(MetricEvent event, Context ctx) throws Exception {
+            long timestamp = ctx.timestamp() != null ? ctx.timestamp() : event.getTimestamp();
+            long windowStart = TimeWindow.getWindowStartWithOffset(timestamp, 0, windowSizeMs);
+            long windowMaxTimestamp = windowStart + windowSizeMs - 1;
+            long watermark = ctx.timerService().currentWatermark();
+            if (windowMaxTimestamp + allowedLatenessMs <= watermark) {
+                return false;
+            }
+            boolean fired = windowMaxTimestamp <= watermark;
+            
+            MetricAccumulator accumulator = windowState.get(windowStart);
+            if (accumulator == null) {
+                accumulator = newAccumulator(event);
+                if (!fired) {
+                    ctx.timerService().registerEventTimeTimer(windowMaxTimestamp);
+                }
+                if (allowedLatenessMs > 0) {
+                    ctx.timerService().registerEventTimeTimer(windowMaxTimestamp + allowedLatenessMs);
+                }
             }
+            accumulator.add(event.getValue());
+            windowState.put(windowStart, accumulator);
             
-            // Main output with the original event
-            out.collect(event);
+            if (fired) {
+                // Upsert the updated window; the rollups get only the late value
+                lateUpdates.inc();
+                long seriesId = ctx.getCurrentKey();
+                long windowEnd = windowStart + windowSizeMs;
+                MetricAccumulator lateValue = newAccumulator(event);
+                lateValue.add(event.getValue());
+                ctx.output(aggregateOutputTag, MetricAggregator.toAggregate(
+                        seriesId, accumulator, windowStart, windowEnd, RESOLUTION_1MIN));
+                ctx.output(partialOutputTag, MetricAggregator.toAggregate(
+                        seriesId, lateValue, windowStart, windowEnd, RESOLUTION_1MIN));
+            }
+            return true;
+        }
+        
+        private static MetricAccumulator newAccumulator(MetricEvent event) {
+            MetricAccumulator accumulator = new MetricAccumulator();
+            accumulator.setService(event.getService());
+            accumulator.setMetric(event.getMetric());
+            return accumulator;
+        }
+        
+        private String severity(double zScore) {
+            return Math.abs(zScore) >= 2 * zThreshold ? "high" : "medium";
+        }
+    }
+    
+    /**
+     * Per-series EWMA statistics kept in keyed state
+     */
+    public static class SeriesStatistics {
+        private long count;
+        private double mean;
+        private double variance;
+        
+        public SeriesStatistics() {
+        }
+        
+        public long getCount() { return count; }
+        public void setCount(long count) { this.count = count; }
+        
+        public double getMean() { return mean; }
+        public void setMean(double mean) { this.mean = mean; }
+        
+        public double getVariance() { return variance; }
+        public void setVariance(double variance) { this.variance = variance; }
+    }
+    
+    /**
+     * Incremental merge of finer-grained AggregatedMetric partials into a MetricAccumulator
+     */
+    public static class RollupAggregateFunction implements AggregateFunction<AggregatedMetric, MetricAccumulator, MetricAccumulator> {
+        
+        @Override
+        public MetricAccumulator createAccumulator() {
+            return new MetricAccumulator();
+        }
+        
+        @Override
+        public MetricAccumulator add(AggregatedMetric partial, MetricAccumulator accumulator) {
+            if (accumulator.getCount() == 0) {
+                accumulator.setService(partial.getService());
+                accumulator.setMetric(partial.getMetric());
+            }
+            accumulator.merge(partial.getMin(), partial.getMax(), partial.getSum(),
+                    partial.getSumOfSquares(), partial.getCount());
+            if (partial.getSketch() != null) {
+                accumulator.getSketch().merge(QuantileSketch.decode(partial.getSketch()));
+            }
+            return accumulator;
+        }
+        
+        @Override
+        public MetricAccumulator getResult(MetricAccumulator accumulator) {
+            return accumulator;
+        }
+        
+        @Override
+        public MetricAccumulator merge(MetricAccumulator a, MetricAccumulator b) {
+            return a.merge(b);
         }
     }
     
     /**
-     * Window function for aggregating metrics
+     * Window function that turns the pre-aggregated accumulator into an AggregatedMetric
      */
-    public static class MetricAggregator extends ProcessWindowFunction<MetricEvent, AggregatedMetric, String, TimeWindow> {
+    public static class MetricAggregator extends ProcessWindowFunction<MetricAccumulator, AggregatedMetric, Long, TimeWindow> {
+        private final String resolution;
+        
+        public MetricAggregator(String resolution) {
+            this.resolution = resolution;
+        }
         
         @Override
-        public void process(String key, 
+        public void process(Long seriesId, 
                             Context context, 
-                            Iterable<MetricEvent> elements, 
+                            Iterable<MetricAccumulator> elements, 
                             Collector<AggregatedMetric> out) throws Exception {
             
-            double min = Double.MAX_VALUE;
-            double max = Double.MIN_VALUE;
-            double sum = 0;
-            long count = 0;
-            String service = "";
-            String metric = "";
-            
-            for (MetricEvent event : elements) {
-                min = Math.min(min, event.getValue());
-                max = Math.max(max, event.getValue());
-                sum += event.getValue();
-                count++;
-                service = event.getService();
-                metric = event.getMetric();
+            MetricAccumulator accumulator = elements.iterator().next();
+            if (accumulator.getCount() == 0) {
+                return;
             }
+            out.collect(toAggregate(seriesId, accumulator, context.window().getStart(), context.window().getEnd(), resolution));
+        }
+        
+        /**
+         * Build the aggregate of one series and window from its accumulator
+         */
+        public static AggregatedMetric toAggregate(long seriesId, MetricAccumulator accumulator,
+                                                   long windowStart, long windowEnd, String resolution) {
+            AggregatedMetric aggregated = new AggregatedMetric(
+                    System.currentTimeMillis(),
+                    accumulator.getService(),
+                    accumulator.getMetric(),
+                    accumulator.getMin(),
+                    accumulator.getMax(),
+                    accumulator.getAvg(),
+                    accumulator.getCount(),
+                    windowStart,
+                    windowEnd
+            );
+            aggregated.setSeriesId(seriesId);
+            aggregated.setResolution(resolution);
+            aggregated.setSum(accumulator.getSum());
+            aggregated.setSumOfSquares(accumulator.getSumOfSquares());
+            aggregated.setStddev(accumulator.getStddev());
             
-            if (count > 0) {
-                out.collect(new AggregatedMetric(
-                        System.currentTimeMillis(),
-                        service,
-                        metric,
-                        min,
-                        max,
-                        sum / count,
-                        count,
-                        context.window().getStart(),
-                        context.window().getEnd()
-                ));
+            QuantileSketch sketch = accumulator.getSketch();
+            aggregated.setP50(sketch.quantile(0.50));
+            aggregated.setP95(sketch.quantile(0.95));
+            aggregated.setP99(sketch.quantile(0.99));
+            aggregated.setSketch(sketch.encode());
+            return aggregated;
+        }
+    }
+    
+    /**
+     * Bounded-size running statistics and quantile sketch for one window and key
+     */
+    public static class MetricAccumulator {
+        private String service;
+        private String metric;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+        private double sumOfSquares;
+        private long count;
+        private QuantileSketch sketch = new QuantileSketch();
+        
+        public MetricAccumulator() {
+        }
+        
+        public void add(double value) {
+            sketch.add(value);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            sumOfSquares += value * value;
+            count++;
+        }
+        
+        public MetricAccumulator merge(MetricAccumulator other) {
+            if (other.count > 0 && count == 0) {
+                service = other.service;
+                metric = other.metric;
+            }
+            sketch.merge(other.sketch);
+            return merge(other.min, other.max, other.sum, other.sumOfSquares, other.count);
+        }
+        
+        /**
+         * Fold in the statistics of a partial aggregate; its sketch is merged separately
+         */
+        public MetricAccumulator merge(double otherMin, double otherMax, double otherSum,
+                                       double otherSumOfSquares, long otherCount) {
+            if (otherCount == 0) {
+                return this;
             }
+            min = Math.min(min, otherMin);
+            max = Math.max(max, otherMax);
+            sum += otherSum;
+            sumOfSquares += otherSumOfSquares;
+            count += otherCount;
+            return this;
+        }
+        
+        public double getAvg() {
+            return count == 0 ? 0 : sum / count;
         }
+        
+        /**
+         * Population standard deviation, clamped at zero against rounding error
+         */
+        public double getStddev() {
+            if (count == 0) {
+                return 0;
+            }
+            double mean = sum / count;
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+        
+        public String getService() { return service; }
+        public void setService(String service) { this.service = service; }
+        
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+        
+        public double getMin() { return min; }
+        public void setMin(double min) { this.min = min; }
+        
+        public double getMax() { return max; }
+        public void setMax(double max) { this.max = max; }
+        
+        public double getSum() { return sum; }
+        public void setSum(double sum) { this.sum = sum; }
+        
+        public double getSumOfSquares() { return sumOfSquares; }
+        public void setSumOfSquares(double sumOfSquares) { this.sumOfSquares = sumOfSquares; }
+        
+        public long getCount() { return count; }
+        public void setCount(long count) { this.count = count; }
+        
+        public QuantileSketch getSketch() { return sketch; }
+        public void setSketch(QuantileSketch sketch) { this.sketch = sketch; }
     }
     
     /**
      * POJO representing a metric event
      */
-    public static class MetricEvent {
+    public static class MetricEvent implements MetricFields {
         private String id;
+        private long seriesId;
         private long timestamp;
         private String service;
         private String metric;
@@ -296,11 +682,16 @@ public class MetricsProcessingJob {
             this.value = value;
             this.host = host;
             this.region = region;
+            this.seriesId = SeriesId.of(service, metric);
         }
         
         public String getId() { return id; }
         public void setId(String id) { this.id = id; }
         
+        /** SeriesId of service and metric, computed once when the event is decoded */
+        public long getSeriesId() { return seriesId; }
+        public void setSeriesId(long seriesId) { this.seriesId = seriesId; }
+        
         public long getTimestamp() { return timestamp; }
         public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
         
@@ -332,6 +723,169 @@ public class MetricsProcessingJob {
         }
     }
     
+    /**
+     * POJO for a detected anomaly, matching the anomalies table
+     */
+    public static class AnomalyEvent {
+        private String id;
+        private long seriesId;
+        private long timestamp;
+        private String service;
+        private String metric;
+        private double value;
+        private String host;
+        private String region;
+        private double expectedValue;
+        private double deviation;
+        private String severity;
+        
+        public AnomalyEvent() {
+        }
+        
+        public AnomalyEvent(MetricEvent event, double expectedValue, double deviation, String severity) {
+            this.id = UUID.randomUUID().toString();
+            this.seriesId = event.getSeriesId();
+            this.timestamp = event.getTimestamp();
+            this.service = event.getService();
+            this.metric = event.getMetric();
+            this.value = event.getValue();
+            this.host = event.getHost();
+            this.region = event.getRegion();
+            this.expectedValue = expectedValue;
+            this.deviation = deviation;
+            this.severity = severity;
+        }
+        
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        
+        public long getSeriesId() { return seriesId; }
+        public void setSeriesId(long seriesId) { this.seriesId = seriesId; }
+        
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+        
+        public String getService() { return service; }
+        public void setService(String service) { this.service = service; }
+        
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+        
+        public double getValue() { return value; }
+        public void setValue(double value) { this.value = value; }
+        
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+        
+        public String getRegion() { return region; }
+        public void setRegion(String region) { this.region = region; }
+        
+        public double getExpectedValue() { return expectedValue; }
+        public void setExpectedValue(double expectedValue) { this.expectedValue = expectedValue; }
+        
+        /** Deviation from the expected value in standard deviations (z-score) */
+        public double getDeviation() { return deviation; }
+        public void setDeviation(double deviation) { this.deviation = deviation; }
+        
+        public String getSeverity() { return severity; }
+        public void setSeverity(String severity) { this.severity = severity; }
+        
+        public String toJsonString() {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("timestamp", timestamp);
+            json.put("service", service);
+            json.put("metric", metric);
+            json.put("value", value);
+            json.put("host", host);
+            json.put("region", region);
+            json.put("expected_value", expectedValue);
+            json.put("deviation", deviation);
+            json.put("severity", severity);
+            return json.toString();
+        }
+    }
+    
+    /**
+     * POJO for an incident alert published to the alerts topic
+     */
+    public static class AlertEvent {
+        private String id;
+        private String incidentId;
+        private String status;
+        private long timestamp;
+        private String service;
+        private String metric;
+        private double value;
+        private String host;
+        private String region;
+        private double expectedValue;
+        private double deviation;
+        private String severity;
+        private double peakDeviation;
+        private long anomalyCount;
+        private long suppressedCount;
+        private long startedAt;
+        private String message;
+        
+        public AlertEvent() {
+        }
+        
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        
+        public String getIncidentId() { return incidentId; }
+        public void setIncidentId(String incidentId) { this.incidentId = incidentId; }
+        
+        /** open, escalated, ongoing or resolved */
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+        
+        public String getService() { return service; }
+        public void setService(String service) { this.service = service; }
+        
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+        
+        public double getValue() { return value; }
+        public void setValue(double value) { this.value = value; }
+        
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+        
+        public String getRegion() { return region; }
+        public void setRegion(String region) { this.region = region; }
+        
+        public double getExpectedValue() { return expectedValue; }
+        public void setExpectedValue(double expectedValue) { this.expectedValue = expectedValue; }
+        
+        public double getDeviation() { return deviation; }
+        public void setDeviation(double deviation) { this.deviation = deviation; }
+        
+        public String getSeverity() { return severity; }
+        public void setSeverity(String severity) { this.severity = severity; }
+        
+        /** Largest absolute z-score seen in the incident so far */
+        public double getPeakDeviation() { return peakDeviation; }
+        public void setPeakDeviation(double peakDeviation) { this.peakDeviation = peakDeviation; }
+        
+        public long getAnomalyCount() { return anomalyCount; }
+        public void setAnomalyCount(long anomalyCount) { this.anomalyCount = anomalyCount; }
+        
+        /** Anomalies folded into the incident since the previous alert without an alert of their own */
+        public long getSuppressedCount() { return suppressedCount; }
+        public void setSuppressedCount(long suppressedCount) { this.suppressedCount = suppressedCount; }
+        
+        public long getStartedAt() { return startedAt; }
+        public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+        
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+    }
+    
     /**
      * POJO for storing metric statistics
      */
@@ -369,12 +923,21 @@ public class MetricsProcessingJob {
      */
     public static class AggregatedMetric {
         private long timestamp;
+        private long seriesId;
         private String service;
         private String metric;
+        private String resolution;
         private double min;
         private double max;
         private double avg;
         private long count;
+        private double sum;
+        private double sumOfSquares;
+        private double stddev;
+        private double p50;
+        private double p95;
+        private double p99;
+        private byte[] sketch;
         private long windowStart;
         private long windowEnd;
         
@@ -416,6 +979,34 @@ public class MetricsProcessingJob {
         public long getCount() { return count; }
         public void setCount(long count) { this.count = count; }
         
+        public long getSeriesId() { return seriesId; }
+        public void setSeriesId(long seriesId) { this.seriesId = seriesId; }
+        
+        public String getResolution() { return resolution; }
+        public void setResolution(String resolution) { this.resolution = resolution; }
+        
+        public double getSum() { return sum; }
+        public void setSum(double sum) { this.sum = sum; }
+        
+        public double getSumOfSquares() { return sumOfSquares; }
+        public void setSumOfSquares(double sumOfSquares) { this.sumOfSquares = sumOfSquares; }
+        
+        public double getStddev() { return stddev; }
+        public void setStddev(double stddev) { this.stddev = stddev; }
+        
+        public double getP50() { return p50; }
+        public void setP50(double p50) { this.p50 = p50; }
+        
+        public double getP95() { return p95; }
+        public void setP95(double p95) { this.p95 = p95; }
+        
+        public double getP99() { return p99; }
+        public void setP99(double p99) { this.p99 = p99; }
+        
+        /** Encoded QuantileSketch of the window, mergeable into coarser rollups */
+        public byte[] getSketch() { return sketch; }
+        public void setSketch(byte[] sketch) { this.sketch = sketch; }
+        
         public long getWindowStart() { return windowStart; }
         public void setWindowStart(long windowStart) { this.windowStart = windowStart; }
         
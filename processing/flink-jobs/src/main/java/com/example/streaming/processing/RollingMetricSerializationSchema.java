@@ -0,0 +1,53 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.JsonWriter;
+import com.example.streaming.processing.MetricsProcessingJob.AggregatedMetric;
+
+import org.apache.flink.api.common.serialization.SerializationSchema;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON values and series keys for the compacted rolling-metrics topic.
+ * Records are keyed by service and metric, so compaction keeps the latest
+ * rolling aggregate of every series and a reader starting from the
+ * beginning of the topic gets the current value of each.
+ */
+public class RollingMetricSerializationSchema implements SerializationSchema<AggregatedMetric> {
+    private transient JsonWriter jsonWriter;
+
+    /**
+     * Record key: service and metric separated by a colon
+     */
+    public static SerializationSchema<AggregatedMetric> keySchema() {
+        return aggregate -> (aggregate.getService() + ":" + aggregate.getMetric()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void open(InitializationContext context) {
+        jsonWriter = new JsonWriter(256);
+    }
+
+    @Override
+    public byte[] serialize(AggregatedMetric aggregate) {
+        if (jsonWriter == null) {
+            open(null);
+        }
+        return jsonWriter.reset().beginObject()
+                .field("service", aggregate.getService())
+                .field("metric", aggregate.getMetric())
+                .field("resolution", aggregate.getResolution())
+                .field("window_start", aggregate.getWindowStart())
+                .field("window_end", aggregate.getWindowEnd())
+                .field("min", aggregate.getMin())
+                .field("max", aggregate.getMax())
+                .field("avg", aggregate.getAvg())
+                .field("count", aggregate.getCount())
+                .field("stddev", aggregate.getStddev())
+                .field("p50", aggregate.getP50())
+                .field("p95", aggregate.getP95())
+                .field("p99", aggregate.getP99())
+                .endObject()
+                .toByteArray();
+    }
+}
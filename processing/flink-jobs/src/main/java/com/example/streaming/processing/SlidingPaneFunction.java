@@ -0,0 +1,121 @@
+package com.example.streaming.processing;
+
+import com.example.streaming.codec.QuantileSketch;
+import com.example.streaming.processing.MetricsProcessingJob.AggregatedMetric;
+import com.example.streaming.processing.MetricsProcessingJob.MetricAccumulator;
+import com.example.streaming.processing.MetricsProcessingJob.MetricAggregator;
+import com.example.streaming.processing.MetricsProcessingJob.MetricEvent;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sliding event-time window aggregation over shared panes.
+ *
+ * Each event is added to exactly one pane of the slide length instead of to
+ * every window that contains it (window / slide of them). Whenever the
+ * watermark passes a slide boundary the panes covering the window ending
+ * there are merged into one aggregate, and panes no later window needs are
+ * dropped. A series keeps emitting, with a shrinking count, until its last
+ * pane has slid out of the window.
+ *
+ * State per series is one window's worth of panes (window / slide of them,
+ * 30 by default), not one accumulator as in a tumbling window. Each pane holds
+ * its statistics and a quantile sketch limited to paneSketchBins bins, and is
+ * a separate MapState entry, so an event reads and writes only its own pane.
+ * At the default accuracy 256 bins cover values spanning about two orders of
+ * magnitude within a pane before the lowest bins are collapsed.
+ *
+ * Output only moves forward in time: an event arriving after its pane's
+ * windows began firing is counted from the next slide on, and one whose
+ * pane has left every window is dropped, so a newer rolling value is never
+ * overwritten by an older one downstream.
+ */
+public class SlidingPaneFunction extends KeyedProcessFunction<Long, MetricEvent, AggregatedMetric> {
+    private final long windowSizeMs;
+    private final long slideMs;
+    private final String resolution;
+    private final int paneSketchBins;
+
+    private transient MapState<Long, MetricAccumulator> paneState;
+
+    public SlidingPaneFunction(long windowSizeMs, long slideMs, String resolution, int paneSketchBins) {
+        if (windowSizeMs % slideMs != 0) {
+            throw new IllegalArgumentException("Window size " + windowSizeMs + " ms is not a multiple of the slide " + slideMs + " ms");
+        }
+        this.windowSizeMs = windowSizeMs;
+        this.slideMs = slideMs;
+        this.resolution = resolution;
+        this.paneSketchBins = paneSketchBins;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        paneState = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("sliding-panes", Long.class, MetricAccumulator.class));
+    }
+
+    @Override
+    public void processElement(MetricEvent event, Context ctx, Collector<AggregatedMetric> out) throws Exception {
+        long timestamp = ctx.timestamp() != null ? ctx.timestamp() : event.getTimestamp();
+        long paneStart = TimeWindow.getWindowStartWithOffset(timestamp, 0, slideMs);
+        long watermark = ctx.timerService().currentWatermark();
+        if (paneStart + windowSizeMs - 1 <= watermark) {
+            return;
+        }
+
+        MetricAccumulator pane = paneState.get(paneStart);
+        if (pane == null) {
+            pane = new MetricAccumulator();
+            pane.setService(event.getService());
+            pane.setMetric(event.getMetric());
+            pane.setSketch(new QuantileSketch(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, paneSketchBins));
+            // First window containing the pane, or the next one to fire if that has passed
+            long nextSlideTimer = TimeWindow.getWindowStartWithOffset(watermark + 1, 0, slideMs) + slideMs - 1;
+            ctx.timerService().registerEventTimeTimer(Math.max(paneStart + slideMs - 1, nextSlideTimer));
+        }
+        pane.add(event.getValue());
+        paneState.put(paneStart, pane);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<AggregatedMetric> out) throws Exception {
+        long windowEnd = timestamp + 1;
+        long windowStart = windowEnd - windowSizeMs;
+        // Panes before this are not part of the next window
+        long nextWindowStart = windowStart + slideMs;
+
+        MetricAccumulator window = new MetricAccumulator();
+        List<Long> expired = new ArrayList<>();
+        boolean remaining = false;
+        for (Map.Entry<Long, MetricAccumulator> entry : paneState.entries()) {
+            long paneStart = entry.getKey();
+            if (paneStart >= windowStart && paneStart < windowEnd) {
+                window.merge(entry.getValue());
+            }
+            if (paneStart < nextWindowStart) {
+                expired.add(paneStart);
+            } else {
+                remaining = true;
+            }
+        }
+        for (Long paneStart : expired) {
+            paneState.remove(paneStart);
+        }
+
+        if (window.getCount() > 0) {
+            out.collect(MetricAggregator.toAggregate(ctx.getCurrentKey(), window, windowStart, windowEnd, resolution));
+        }
+        if (remaining) {
+            ctx.timerService().registerEventTimeTimer(timestamp + slideMs);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.streaming.processing;
+
+import org.apache.flink.contrib.streaming.state.EmbeddedRocksDBStateBackend;
+import org.apache.flink.contrib.streaming.state.PredefinedOptions;
+import org.apache.flink.contrib.streaming.state.RocksDBMemoryConfiguration;
+import org.apache.flink.runtime.state.hashmap.HashMapStateBackend;
+import org.apache.flink.streaming.api.environment.CheckpointConfig;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * State backend and checkpoint settings of the processing job, read from the
+ * environment.
+ *
+ * By default keyed state lives in an embedded RocksDB instance with
+ * incremental checkpoints, so heap use does not grow with the number of
+ * series and each checkpoint uploads only the SST files created since the
+ * previous one. RocksDB memory comes out of Flink managed memory unless a
+ * fixed amount per slot is configured. Checkpoints start aligned and switch
+ * to unaligned when barriers are held up longer than the aligned timeout,
+ * i.e. under backpressure. STATE_BACKEND=hashmap restores heap state.
+ */
+public class StateBackendConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(StateBackendConfig.class);
+
+    private final String backend;
+    private final boolean incremental;
+    private final String checkpointDir;
+    private final long checkpointIntervalMs;
+    private final long checkpointTimeoutMs;
+    private final long minPauseBetweenCheckpointsMs;
+    private final boolean unalignedCheckpoints;
+    private final long alignedCheckpointTimeoutMs;
+    private final PredefinedOptions predefinedOptions;
+    private final String fixedMemoryPerSlot;
+    private final double writeBufferRatio;
+    private final double highPriorityPoolRatio;
+    private final String localDbPath;
+
+    private StateBackendConfig(Map<String, String> env) {
+        backend = env.getOrDefault("STATE_BACKEND", "rocksdb").toLowerCase(Locale.ROOT);
+        incremental = Boolean.parseBoolean(env.getOrDefault("CHECKPOINT_INCREMENTAL", "true"));
+        checkpointDir = env.getOrDefault("CHECKPOINT_DIR", "");
+        checkpointIntervalMs = Long.parseLong(env.getOrDefault("CHECKPOINT_INTERVAL_MS", "60000"));
+        checkpointTimeoutMs = Long.parseLong(env.getOrDefault("CHECKPOINT_TIMEOUT_MS", "600000"));
+        minPauseBetweenCheckpointsMs = Long.parseLong(env.getOrDefault("CHECKPOINT_MIN_PAUSE_MS", "10000"));
+        unalignedCheckpoints = Boolean.parseBoolean(env.getOrDefault("CHECKPOINT_UNALIGNED", "true"));
+        alignedCheckpointTimeoutMs = Long.parseLong(env.getOrDefault("CHECKPOINT_ALIGNED_TIMEOUT_MS", "30000"));
+        predefinedOptions = PredefinedOptions.valueOf(
+                env.getOrDefault("ROCKSDB_PREDEFINED_OPTIONS", "DEFAULT").toUpperCase(Locale.ROOT));
+        fixedMemoryPerSlot = env.getOrDefault("ROCKSDB_FIXED_MEMORY_PER_SLOT", "");
+        writeBufferRatio = Double.parseDouble(env.getOrDefault("ROCKSDB_WRITE_BUFFER_RATIO", "0.5"));
+        highPriorityPoolRatio = Double.parseDouble(env.getOrDefault("ROCKSDB_HIGH_PRIORITY_POOL_RATIO", "0.1"));
+        localDbPath = env.getOrDefault("ROCKSDB_LOCAL_DIR", "");
+    }
+
+    public static StateBackendConfig fromEnvironment() {
+        return new StateBackendConfig(System.getenv());
+    }
+
+    public long getCheckpointIntervalMs() {
+        return checkpointIntervalMs;
+    }
+
+    public long getCheckpointTimeoutMs() {
+        return checkpointTimeoutMs;
+    }
+
+    /**
+     * Set the state backend, checkpoint storage and checkpointing options on the environment
+     */
+    public void applyTo(StreamExecutionEnvironment env) {
+        if ("rocksdb".equals(backend)) {
+            env.setStateBackend(createRocksDBBackend());
+        } else if ("hashmap".equals(backend)) {
+            env.setStateBackend(new HashMapStateBackend());
+        } else {
+            throw new IllegalArgumentException("Unknown STATE_BACKEND: " + backend);
+        }
+
+        env.enableCheckpointing(checkpointIntervalMs);
+        CheckpointConfig checkpointConfig = env.getCheckpointConfig();
+        checkpointConfig.setCheckpointTimeout(checkpointTimeoutMs);
+        checkpointConfig.setMinPauseBetweenCheckpoints(minPauseBetweenCheckpointsMs);
+        checkpointConfig.setMaxConcurrentCheckpoints(1);
+        // Keep the last checkpoint on cancel so the job can be resumed from it
+        checkpointConfig.setExternalizedCheckpointCleanup(
+                CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
+        if (!checkpointDir.isEmpty()) {
+            checkpointConfig.setCheckpointStorage(checkpointDir);
+        }
+        if (unalignedCheckpoints) {
+            checkpointConfig.enableUnalignedCheckpoints();
+            checkpointConfig.setAlignedCheckpointTimeout(Duration.ofMillis(alignedCheckpointTimeoutMs));
+        }
+
+        LOG.info("State backend {} (incremental={}), checkpoints every {} ms, unaligned after {} ms",
+                backend, "rocksdb".equals(backend) && incremental, checkpointIntervalMs,
+                unalignedCheckpoints ? String.valueOf(alignedCheckpointTimeoutMs) : "never");
+    }
+
+    private EmbeddedRocksDBStateBackend createRocksDBBackend() {
+        EmbeddedRocksDBStateBackend rocksDB = new EmbeddedRocksDBStateBackend(incremental);
+        rocksDB.setPredefinedOptions(predefinedOptions);
+        if (!localDbPath.isEmpty()) {
+            rocksDB.setDbStoragePath(localDbPath);
+        }
+
+        // Block cache and write buffers share one bounded budget per slot
+        RocksDBMemoryConfiguration memory = rocksDB.getMemoryConfiguration();
+        if (fixedMemoryPerSlot.isEmpty()) {
+            memory.setUseManagedMemory(true);
+        } else {
+            memory.setFixedMemoryPerSlot(fixedMemoryPerSlot);
+        }
+        memory.setWriteBufferRatio(writeBufferRatio);
+        memory.setHighPriorityPoolRatio(highPriorityPoolRatio);
+        return rocksDB;
+    }
+}
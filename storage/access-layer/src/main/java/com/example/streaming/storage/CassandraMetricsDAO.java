@@ -1,5 +1,7 @@
 package com.example.streaming.storage;
 
+import com.example.streaming.codec.QuantileSketch;
+
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
 import com.datastax.oss.driver.api.core.cql.*;
@@ -11,13 +13,20 @@ import com.datastax.oss.driver.api.querybuilder.select.Select;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class CassandraMetricsDAO {
@@ -25,17 +34,35 @@ public class CassandraMetricsDAO {
     
     private final CqlSession session;
     private final String keyspace;
+    private final CassandraWritePipeline writePipeline;
     
     // Prepared statements for better performance
     private PreparedStatement insertRawMetricStmt;
-    private PreparedStatement insertAggregatedMetric1minStmt;
+    private final Map<MetricResolution, PreparedStatement> insertAggregatedMetricStmts = new EnumMap<>(MetricResolution.class);
     private PreparedStatement insertAnomalyStmt;
     private PreparedStatement insertServiceHealthStmt;
     private PreparedStatement getRawMetricsStmt;
-    private PreparedStatement getAggregatedMetricsStmt;
+    private final Map<MetricResolution, PreparedStatement> getAggregatedMetricsStmts = new EnumMap<>(MetricResolution.class);
+    private final Map<MetricResolution, PreparedStatement> getSketchesStmts = new EnumMap<>(MetricResolution.class);
     private PreparedStatement getAnomaliesStmt;
     private PreparedStatement getServiceHealthStmt;
     
+    // Dashboard query tables, written alongside the tables above
+    private PreparedStatement insertRecentAnomalyStmt;
+    private PreparedStatement upsertLatestMetricStmt;
+    private PreparedStatement upsertLatestServiceHealthStmt;
+    private PreparedStatement getRecentAnomaliesStmt;
+    private PreparedStatement getLatestMetricsStmt;
+    private PreparedStatement getLatestServiceHealthStmt;
+    private final int dashboardAnomalyLimit;
+    
+    // Read-through cache of aggregate range queries, by fixed time bucket; null when disabled
+    private final QueryCache<BucketKey, List<Map<String, Object>>> queryCache;
+    // Buckets ending more than this long ago no longer receive writes and may be cached
+    private final long cacheSettleMs;
+    private PreparedStatement getRawMetricsRangeStmt;
+    private final Map<MetricResolution, PreparedStatement> getAggregatedMetricsBucketStmts = new EnumMap<>(MetricResolution.class);
+    
     public CassandraMetricsDAO(String contactPoint, int port, String datacenter, String keyspace) {
         this.keyspace = keyspace;
         
@@ -49,6 +76,21 @@ public class CassandraMetricsDAO {
         // Initialize prepared statements
         prepareStatements();
         
+        // Batched, bounded write path shared by all inserts
+        writePipeline = CassandraWritePipeline.fromEnvironment(session);
+        
+        Map<String, String> env = System.getenv();
+        dashboardAnomalyLimit = Integer.parseInt(env.getOrDefault("DASHBOARD_ANOMALY_LIMIT", "1000"));
+        // A window is final once the watermark passes its end plus the allowed lateness
+        long defaultSettleMs = Long.parseLong(env.getOrDefault("WATERMARK_OUT_OF_ORDERNESS_MS", "5000"))
+                + Long.parseLong(env.getOrDefault("ALLOWED_LATENESS_MS", "60000"))
+                + Long.parseLong(env.getOrDefault("QUERY_CACHE_SETTLE_MARGIN_MS", "60000"));
+        cacheSettleMs = Long.parseLong(env.getOrDefault("QUERY_CACHE_SETTLE_MS", String.valueOf(defaultSettleMs)));
+        queryCache = Boolean.parseBoolean(env.getOrDefault("QUERY_CACHE_ENABLED", "true"))
+                ? new QueryCache<>(Long.parseLong(env.getOrDefault("QUERY_CACHE_MAX_ROWS", "200000")),
+                        Long.parseLong(env.getOrDefault("QUERY_CACHE_EXPIRE_MS", "3600000")))
+                : null;
+        
         logger.info("Cassandra DAO initialized with keyspace: {}", keyspace);
     }
     
@@ -61,9 +103,20 @@ public class CassandraMetricsDAO {
                 "INSERT INTO raw_metrics (service, metric, timestamp, value, host, region, id) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?)");
         
-        insertAggregatedMetric1minStmt = session.prepare(
-                "INSERT INTO aggregated_metrics_1min (service, metric, window_start, min_value, max_value, avg_value, count) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        // One insert and one range query per aggregation resolution
+        for (MetricResolution resolution : MetricResolution.values()) {
+            insertAggregatedMetricStmts.put(resolution, session.prepare(
+                    "INSERT INTO " + resolution.getTable() + " (service, metric, window_start, min_value, max_value, avg_value, count, sketch) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)"));
+            getAggregatedMetricsStmts.put(resolution, session.prepare(
+                    "SELECT * FROM " + resolution.getTable() + " WHERE service = ? AND metric = ? AND window_start >= ? AND window_start <= ? " +
+                    "ORDER BY window_start DESC"));
+            getSketchesStmts.put(resolution, session.prepare(
+                    "SELECT sketch FROM " + resolution.getTable() + " WHERE service = ? AND metric = ? AND window_start >= ? AND window_start <= ?"));
+            getAggregatedMetricsBucketStmts.put(resolution, session.prepare(
+                    "SELECT * FROM " + resolution.getTable() + " WHERE service = ? AND metric = ? AND window_start >= ? AND window_start < ? " +
+                    "ORDER BY window_start DESC"));
+        }
         
         insertAnomalyStmt = session.prepare(
                 "INSERT INTO anomalies (id, service, metric, timestamp, value, expected_value, deviation, severity) " +
@@ -74,14 +127,27 @@ public class CassandraMetricsDAO {
                 "avg_response_time, avg_cpu_usage, avg_memory_usage) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
         
+        insertRecentAnomalyStmt = session.prepare(
+                "INSERT INTO recent_anomalies_by_day (day, timestamp, id, service, metric, value, expected_value, deviation, severity) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        
+        // The event time is the write time, so the newest event wins regardless of arrival order
+        upsertLatestMetricStmt = session.prepare(
+                "INSERT INTO latest_metric_value (service, metric, timestamp, value) " +
+                "VALUES (?, ?, ?, ?) USING TIMESTAMP ?");
+        
+        upsertLatestServiceHealthStmt = session.prepare(
+                "INSERT INTO latest_service_health (service, timestamp, status, metrics_count, anomalies_count, " +
+                "avg_response_time, avg_cpu_usage, avg_memory_usage) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+        
         // Select statements
         getRawMetricsStmt = session.prepare(
                 "SELECT * FROM raw_metrics WHERE service = ? AND metric = ? AND timestamp >= ? AND timestamp <= ? " +
                 "ORDER BY timestamp DESC LIMIT ?");
-        
-        getAggregatedMetricsStmt = session.prepare(
-                "SELECT * FROM aggregated_metrics_1min WHERE service = ? AND metric = ? AND window_start >= ? AND window_start <= ? " +
-                "ORDER BY window_start DESC");
+        getRawMetricsRangeStmt = session.prepare(
+                "SELECT timestamp, value FROM raw_metrics WHERE service = ? AND metric = ? AND timestamp >= ? AND timestamp <= ? " +
+                "ORDER BY timestamp DESC");
         
         getAnomaliesStmt = session.prepare(
                 "SELECT * FROM anomalies WHERE service = ? AND metric = ? AND timestamp >= ? AND timestamp <= ? " +
@@ -90,72 +156,115 @@ public class CassandraMetricsDAO {
         getServiceHealthStmt = session.prepare(
                 "SELECT * FROM service_health WHERE service = ? AND timestamp >= ? AND timestamp <= ? " +
                 "ORDER BY timestamp DESC");
+        
+        getRecentAnomaliesStmt = session.prepare(
+                "SELECT * FROM recent_anomalies_by_day WHERE day = ? AND timestamp > ? LIMIT ?");
+        
+        // Both tables hold one row per series or service, so reading them whole is cheap
+        getLatestMetricsStmt = session.prepare(
+                "SELECT service, metric, timestamp, value FROM latest_metric_value");
+        
+        getLatestServiceHealthStmt = session.prepare(
+                "SELECT * FROM latest_service_health");
     }
     
     /**
      * Insert a raw metric data point
      */
-    public void insertRawMetric(String service, String metric, Instant timestamp, double value, 
-                               String host, String region, String id) {
+    public CompletionStage<Void> insertRawMetric(String service, String metric, Instant timestamp, double value, 
+                                                String host, String region, String id) {
         BoundStatement bound = insertRawMetricStmt.bind(
                 service, metric, timestamp, value, host, region, id);
+        BoundStatement latest = upsertLatestMetricStmt.bind(
+                service, metric, timestamp, value, writeTime(timestamp));
         
-        session.executeAsync(bound)
-                .whenComplete((result, error) -> {
-                    if (error != null) {
-                        logger.error("Error inserting raw metric: {}", error.getMessage());
-                    }
-                });
+        return writePipeline.write(bound, service, metric)
+                .thenCombine(writePipeline.write(latest, service, null), (a, b) -> null);
     }
     
     /**
-     * Insert an aggregated metric
+     * Insert a minute-level aggregated metric
      */
-    public void insertAggregatedMetric(String service, String metric, Instant windowStart,
-                                      double minValue, double maxValue, double avgValue, long count) {
-        BoundStatement bound = insertAggregatedMetric1minStmt.bind(
-                service, metric, windowStart, minValue, maxValue, avgValue, count);
-        
-        session.executeAsync(bound)
-                .whenComplete((result, error) -> {
-                    if (error != null) {
-                        logger.error("Error inserting aggregated metric: {}", error.getMessage());
-                    }
-                });
+    public CompletionStage<Void> insertAggregatedMetric(String service, String metric, Instant windowStart,
+                                                       double minValue, double maxValue, double avgValue, long count) {
+        return insertAggregatedMetric(MetricResolution.ONE_MINUTE, service, metric, windowStart,
+                minValue, maxValue, avgValue, count, null);
+    }
+    
+    /**
+     * Insert an aggregated metric at the given resolution, with its encoded QuantileSketch if available
+     */
+    public CompletionStage<Void> insertAggregatedMetric(MetricResolution resolution, String service, String metric,
+                                                       Instant windowStart, double minValue, double maxValue,
+                                                       double avgValue, long count, byte[] sketch) {
+        BoundStatement bound = insertAggregatedMetricStmts.get(resolution).bind(
+                service, metric, windowStart, minValue, maxValue, avgValue, count,
+                sketch != null ? ByteBuffer.wrap(sketch) : null);
+        
+        // A rewritten window (a late firing or a replay) must not be served from a stale cached bucket
+        if (queryCache != null) {
+            long bucketMs = resolution.getCacheBucket().toMillis();
+            queryCache.invalidate(new BucketKey(resolution.getTable(), service, metric,
+                    Math.floorDiv(windowStart.toEpochMilli(), bucketMs) * bucketMs));
+        }
+        return writePipeline.write(bound, service, metric);
     }
     
     /**
      * Insert an anomaly event
      */
-    public void insertAnomaly(UUID id, String service, String metric, Instant timestamp,
-                             double value, double expectedValue, double deviation, String severity) {
+    public CompletionStage<Void> insertAnomaly(UUID id, String service, String metric, Instant timestamp,
+                                              double value, double expectedValue, double deviation, String severity) {
         BoundStatement bound = insertAnomalyStmt.bind(
                 id, service, metric, timestamp, value, expectedValue, deviation, severity);
+        LocalDate day = LocalDate.ofInstant(timestamp, ZoneOffset.UTC);
+        BoundStatement recent = insertRecentAnomalyStmt.bind(
+                day, timestamp, id, service, metric, value, expectedValue, deviation, severity);
         
-        session.executeAsync(bound)
-                .whenComplete((result, error) -> {
-                    if (error != null) {
-                        logger.error("Error inserting anomaly: {}", error.getMessage());
-                    }
-                });
+        return writePipeline.write(bound, service, metric)
+                .thenCombine(writePipeline.write(recent, day.toString(), null), (a, b) -> null);
     }
     
     /**
      * Insert service health status
      */
-    public void insertServiceHealth(String service, Instant timestamp, String status,
-                                   int metricsCount, int anomaliesCount, double avgResponseTime,
-                                   double avgCpuUsage, double avgMemoryUsage) {
+    public CompletionStage<Void> insertServiceHealth(String service, Instant timestamp, String status,
+                                                    int metricsCount, int anomaliesCount, double avgResponseTime,
+                                                    double avgCpuUsage, double avgMemoryUsage) {
         BoundStatement bound = insertServiceHealthStmt.bind(
                 service, timestamp, status, metricsCount, anomaliesCount,
                 avgResponseTime, avgCpuUsage, avgMemoryUsage);
+        BoundStatement latest = upsertLatestServiceHealthStmt.bind(
+                service, timestamp, status, metricsCount, anomaliesCount,
+                avgResponseTime, avgCpuUsage, avgMemoryUsage, writeTime(timestamp));
         
-        session.executeAsync(bound)
-                .whenComplete((result, error) -> {
-                    if (error != null) {
-                        logger.error("Error inserting service health: {}", error.getMessage());
-                    }
-                });
+        return writePipeline.write(bound, service, null)
+                .thenCombine(writePipeline.write(latest, service, null), (a, b) -> null);
+    }
+    
+    /**
+     * Cassandra write time (microseconds) for an event time
+     */
+    private static long writeTime(Instant timestamp) {
+        return TimeUnit.MILLISECONDS.toMicros(timestamp.toEpochMilli());
+    }
+    
+    /**
+     * Send all queued writes; completes once they are written, exceptionally if any failed
+     */
+    public CompletionStage<Void> flush() {
+        return writePipeline.flush();
+    }
+    
+    /**
+     * Number of writes queued or in flight
+     */
+    public int getWriteQueueDepth() {
+        return writePipeline.getQueueDepth();
+    }
+    
+    public CassandraWritePipeline getWritePipeline() {
+        return writePipeline;
     }
     
     /**
@@ -164,48 +273,362 @@ public class CassandraMetricsDAO {
     public List<Map<String, Object>> getRawMetrics(String service, String metric, 
                                                   Instant startTime, Instant endTime, int limit) {
         BoundStatement bound = getRawMetricsStmt.bind(service, metric, startTime, endTime, limit);
-        ResultSet rs = session.execute(bound);
-        
+        return rawMetricRows(session.execute(bound));
+    }
+    
+    private static List<Map<String, Object>> rawMetricRows(ResultSet rs) {
         List<Map<String, Object>> results = new ArrayList<>();
         for (Row row : rs) {
-            Map<String, Object> metric_data = new HashMap<>();
-            metric_data.put("service", row.getString("service"));
-            metric_data.put("metric", row.getString("metric"));
-            metric_data.put("timestamp", row.getInstant("timestamp"));
-            metric_data.put("value", row.getDouble("value"));
-            metric_data.put("host", row.getString("host"));
-            metric_data.put("region", row.getString("region"));
-            metric_data.put("id", row.getString("id"));
-            results.add(metric_data);
+            results.add(rawMetricRow(row));
         }
         
         return results;
     }
     
+    private static Map<String, Object> rawMetricRow(Row row) {
+        Map<String, Object> metric_data = new HashMap<>();
+        metric_data.put("service", row.getString("service"));
+        metric_data.put("metric", row.getString("metric"));
+        metric_data.put("timestamp", row.getInstant("timestamp"));
+        metric_data.put("value", row.getDouble("value"));
+        metric_data.put("host", row.getString("host"));
+        metric_data.put("region", row.getString("region"));
+        metric_data.put("id", row.getString("id"));
+        return metric_data;
+    }
+    
     /**
-     * Get aggregated metrics for a service and metric within a time range
+     * Get minute-level aggregated metrics for a service and metric within a time range
      */
     public List<Map<String, Object>> getAggregatedMetrics(String service, String metric,
                                                          Instant startTime, Instant endTime) {
-        BoundStatement bound = getAggregatedMetricsStmt.bind(service, metric, startTime, endTime);
-        ResultSet rs = session.execute(bound);
+        return getAggregatedMetrics(MetricResolution.ONE_MINUTE, service, metric, startTime, endTime);
+    }
+    
+    /**
+     * Get aggregated metrics at the finest resolution that keeps the row count bounded for the range
+     */
+    public List<Map<String, Object>> getAggregatedMetricsForRange(String service, String metric,
+                                                                 Instant startTime, Instant endTime) {
+        MetricResolution resolution = MetricResolution.forRange(Duration.between(startTime, endTime));
+        return getAggregatedMetrics(resolution, service, metric, startTime, endTime);
+    }
+    
+    /**
+     * Get aggregated metrics at the given resolution for a service and metric within a time range
+     */
+    public List<Map<String, Object>> getAggregatedMetrics(MetricResolution resolution, String service, String metric,
+                                                         Instant startTime, Instant endTime) {
+        if (queryCache != null) {
+            return getBucketed(resolution, service, metric, startTime, endTime);
+        }
+        BoundStatement bound = getAggregatedMetricsStmts.get(resolution).bind(service, metric, startTime, endTime);
+        return aggregatedMetricRows(resolution, session.execute(bound));
+    }
+    
+    private static List<Map<String, Object>> aggregatedMetricRows(MetricResolution resolution, ResultSet rs) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Row row : rs) {
+            results.add(aggregatedMetricRow(resolution, row));
+        }
         
+        return results;
+    }
+    
+    private static Map<String, Object> aggregatedMetricRow(MetricResolution resolution, Row row) {
+        Map<String, Object> metric_data = new HashMap<>();
+        metric_data.put("service", row.getString("service"));
+        metric_data.put("metric", row.getString("metric"));
+        metric_data.put("resolution", resolution.getLabel());
+        metric_data.put("window_start", row.getInstant("window_start"));
+        metric_data.put("min_value", row.getDouble("min_value"));
+        metric_data.put("max_value", row.getDouble("max_value"));
+        metric_data.put("avg_value", row.getDouble("avg_value"));
+        metric_data.put("count", row.getLong("count"));
+        QuantileSketch sketch = readSketch(row);
+        if (sketch != null) {
+            metric_data.put("p50", sketch.quantile(0.50));
+            metric_data.put("p95", sketch.quantile(0.95));
+            metric_data.put("p99", sketch.quantile(0.99));
+        }
+        return metric_data;
+    }
+    
+    /**
+     * Read one page of raw metrics, newest first. Pass null as paging state for
+     * the first page and the state of the previous page to continue; a state is
+     * only valid for the same series and range.
+     */
+    public CompletionStage<MetricPage> getRawMetricsPage(String service, String metric, Instant startTime,
+                                                         Instant endTime, int pageSize, String pagingState) {
+        BoundStatement bound = pagedStatement(
+                getRawMetricsRangeStmt.bind(service, metric, startTime, endTime), pageSize, pagingState);
+        return session.executeAsync(bound).thenApply(rs -> {
+            int size = rs.remaining();
+            long[] timestamps = new long[size];
+            double[] values = new double[size];
+            int i = 0;
+            for (Row row : rs.currentPage()) {
+                timestamps[i] = row.getInstant("timestamp").toEpochMilli();
+                values[i] = row.getDouble("value");
+                i++;
+            }
+            return new MetricPage(service, metric, timestamps, values, null, null, null, nextPagingState(rs));
+        });
+    }
+    
+    /**
+     * Read one page of aggregated metrics at the given resolution, newest first
+     */
+    public CompletionStage<MetricPage> getAggregatedMetricsPage(MetricResolution resolution, String service, String metric,
+                                                                Instant startTime, Instant endTime, int pageSize,
+                                                                String pagingState) {
+        BoundStatement bound = pagedStatement(
+                getAggregatedMetricsStmts.get(resolution).bind(service, metric, startTime, endTime), pageSize, pagingState);
+        return session.executeAsync(bound).thenApply(rs -> {
+            int size = rs.remaining();
+            long[] timestamps = new long[size];
+            double[] values = new double[size];
+            double[] minValues = new double[size];
+            double[] maxValues = new double[size];
+            long[] counts = new long[size];
+            int i = 0;
+            for (Row row : rs.currentPage()) {
+                timestamps[i] = row.getInstant("window_start").toEpochMilli();
+                values[i] = row.getDouble("avg_value");
+                minValues[i] = row.getDouble("min_value");
+                maxValues[i] = row.getDouble("max_value");
+                counts[i] = row.getLong("count");
+                i++;
+            }
+            return new MetricPage(service, metric, timestamps, values, minValues, maxValues, counts, nextPagingState(rs));
+        });
+    }
+    
+    /**
+     * Stream raw metrics page by page as the subscriber requests them, starting
+     * at the given paging state (null for the newest row)
+     */
+    public Flow.Publisher<MetricPage> streamRawMetrics(String service, String metric, Instant startTime,
+                                                       Instant endTime, int pageSize, String pagingState) {
+        return new MetricPagePublisher(
+                state -> getRawMetricsPage(service, metric, startTime, endTime, pageSize, state), pagingState);
+    }
+    
+    /**
+     * Stream aggregated metrics page by page as the subscriber requests them
+     */
+    public Flow.Publisher<MetricPage> streamAggregatedMetrics(MetricResolution resolution, String service, String metric,
+                                                              Instant startTime, Instant endTime, int pageSize,
+                                                              String pagingState) {
+        return new MetricPagePublisher(
+                state -> getAggregatedMetricsPage(resolution, service, metric, startTime, endTime, pageSize, state),
+                pagingState);
+    }
+    
+    private static BoundStatement pagedStatement(BoundStatement bound, int pageSize, String pagingState) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        bound = bound.setPageSize(pageSize);
+        if (pagingState != null) {
+            bound = bound.setPagingState(ByteBuffer.wrap(Base64.getUrlDecoder().decode(pagingState)));
+        }
+        return bound;
+    }
+    
+    private static String nextPagingState(AsyncResultSet rs) {
+        if (!rs.hasMorePages()) {
+            return null;
+        }
+        ByteBuffer state = rs.getExecutionInfo().getPagingState().duplicate();
+        byte[] bytes = new byte[state.remaining()];
+        state.get(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+    
+    /**
+     * Answer an aggregate range query newest first from fixed time buckets.
+     * Buckets whose windows are final are served from the cache; each run of
+     * adjacent closed buckets missing from it is read with one range query,
+     * whose rows are split back into buckets to fill the cache. The open
+     * buckets at the recent end, including any in the future, are read
+     * together with one query and never cached.
+     *
+     * Raw metrics are not cached: late events and replays write into any past
+     * bucket. Aggregate windows only change until the watermark passes them
+     * plus the allowed lateness (cacheSettleMs), and rewrites through this DAO
+     * invalidate their bucket; rewrites by another process, such as a replay
+     * after a restart with consumer lag, stay cached until the entry expires.
+     */
+    private List<Map<String, Object>> getBucketed(MetricResolution resolution, String service, String metric,
+                                                  Instant startTime, Instant endTime) {
+        String table = resolution.getTable();
+        long bucketMs = resolution.getCacheBucket().toMillis();
+        long now = System.currentTimeMillis();
+        // Rows past the table's TTL are gone, so an earlier start would only walk empty buckets
+        long start = Math.max(startTime.toEpochMilli(), now - resolution.getRetention().toMillis());
+        long end = endTime.toEpochMilli();
         List<Map<String, Object>> results = new ArrayList<>();
+        if (end < start) {
+            return results;
+        }
+        
+        long firstBucket = Math.floorDiv(start, bucketMs) * bucketMs;
+        long rangeEnd = Math.floorDiv(end, bucketMs) * bucketMs + bucketMs;
+        // Buckets ending at or before this no longer receive writes
+        long closedEnd = Math.min(rangeEnd, Math.floorDiv(now - cacheSettleMs, bucketMs) * bucketMs);
+        
+        long openStart = Math.max(closedEnd, firstBucket);
+        if (openStart < rangeEnd) {
+            for (Row row : queryBuckets(resolution, service, metric, openStart, rangeEnd)) {
+                addInRange(results, aggregatedMetricRow(resolution, row), start, end);
+            }
+        }
+        
+        long bucketStart = closedEnd - bucketMs;
+        while (bucketStart >= firstBucket) {
+            List<Map<String, Object>> cached = queryCache.get(new BucketKey(table, service, metric, bucketStart));
+            if (cached != null) {
+                for (Map<String, Object> row : cached) {
+                    addInRange(results, row, start, end);
+                }
+                bucketStart -= bucketMs;
+                continue;
+            }
+            
+            // Extend the run of uncached buckets down to the next cached one or the range start
+            long runEnd = bucketStart + bucketMs;
+            long runStart = bucketStart;
+            while (runStart - bucketMs >= firstBucket
+                    && queryCache.get(new BucketKey(table, service, metric, runStart - bucketMs)) == null) {
+                runStart -= bucketMs;
+            }
+            loadRun(resolution, service, metric, runStart, runEnd, results, start, end);
+            bucketStart = runStart - bucketMs;
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Read the closed buckets [runStart, runEnd) with one query, newest first,
+     * caching each bucket once all its rows are read
+     */
+    private void loadRun(MetricResolution resolution, String service, String metric, long runStart, long runEnd,
+                         List<Map<String, Object>> results, long start, long end) {
+        long bucketMs = resolution.getCacheBucket().toMillis();
+        long current = runEnd - bucketMs;
+        List<Map<String, Object>> bucketRows = new ArrayList<>();
+        for (Row row : queryBuckets(resolution, service, metric, runStart, runEnd)) {
+            // Cached rows are shared between callers, so they are made read-only
+            Map<String, Object> mapped = Collections.unmodifiableMap(aggregatedMetricRow(resolution, row));
+            long rowBucket = Math.floorDiv(((Instant) mapped.get("window_start")).toEpochMilli(), bucketMs) * bucketMs;
+            while (current > rowBucket) {
+                cacheBucket(resolution.getTable(), service, metric, current, bucketRows);
+                bucketRows = new ArrayList<>();
+                current -= bucketMs;
+            }
+            bucketRows.add(mapped);
+            addInRange(results, mapped, start, end);
+        }
+        for (; current >= runStart; current -= bucketMs) {
+            cacheBucket(resolution.getTable(), service, metric, current, bucketRows);
+            bucketRows = new ArrayList<>();
+        }
+    }
+    
+    private ResultSet queryBuckets(MetricResolution resolution, String service, String metric, long from, long to) {
+        return session.execute(getAggregatedMetricsBucketStmts.get(resolution).bind(
+                service, metric, Instant.ofEpochMilli(from), Instant.ofEpochMilli(to)));
+    }
+    
+    private void cacheBucket(String table, String service, String metric, long bucketStart,
+                             List<Map<String, Object>> rows) {
+        queryCache.put(new BucketKey(table, service, metric, bucketStart),
+                Collections.unmodifiableList(rows), rows.size() + 1);
+    }
+    
+    /**
+     * Add the row if its window starts within [start, end]
+     */
+    private static void addInRange(List<Map<String, Object>> results, Map<String, Object> row, long start, long end) {
+        long windowStart = ((Instant) row.get("window_start")).toEpochMilli();
+        if (windowStart >= start && windowStart <= end) {
+            results.add(row);
+        }
+    }
+    
+    /**
+     * Query cache counters ("hits", "misses", "evictions", "hit_rate", "entries", "rows"); empty when disabled
+     */
+    public Map<String, Object> getQueryCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (queryCache != null) {
+            stats.put("hits", queryCache.getHits());
+            stats.put("misses", queryCache.getMisses());
+            stats.put("evictions", queryCache.getEvictions());
+            stats.put("hit_rate", queryCache.getHitRate());
+            stats.put("entries", queryCache.getEntryCount());
+            stats.put("rows", queryCache.getWeight());
+        }
+        return stats;
+    }
+    
+    /**
+     * Merge the sketches of every window in the range into one, or null when no window has a sketch
+     */
+    public QuantileSketch getMergedSketch(MetricResolution resolution, String service, String metric,
+                                          Instant startTime, Instant endTime) {
+        BoundStatement bound = getSketchesStmts.get(resolution).bind(service, metric, startTime, endTime);
+        ResultSet rs = session.execute(bound);
+        
+        QuantileSketch merged = null;
         for (Row row : rs) {
-            Map<String, Object> metric_data = new HashMap<>();
-            metric_data.put("service", row.getString("service"));
-            metric_data.put("metric", row.getString("metric"));
-            metric_data.put("window_start", row.getInstant("window_start"));
-            metric_data.put("min_value", row.getDouble("min_value"));
-            metric_data.put("max_value", row.getDouble("max_value"));
-            metric_data.put("avg_value", row.getDouble("avg_value"));
-            metric_data.put("count", row.getLong("count"));
-            results.add(metric_data);
+            QuantileSketch sketch = readSketch(row);
+            if (sketch == null) {
+                continue;
+            }
+            if (merged == null) {
+                merged = sketch;
+            } else {
+                merged.merge(sketch);
+            }
+        }
+        
+        return merged;
+    }
+    
+    /**
+     * Get percentiles over a time range by merging per-window sketches, keyed as "p50", "p99.9", ...
+     */
+    public Map<String, Double> getPercentiles(String service, String metric, Instant startTime, Instant endTime,
+                                              double... quantiles) {
+        MetricResolution resolution = MetricResolution.forRange(Duration.between(startTime, endTime));
+        QuantileSketch sketch = getMergedSketch(resolution, service, metric, startTime, endTime);
+        
+        Map<String, Double> results = new LinkedHashMap<>();
+        if (sketch == null) {
+            return results;
+        }
+        for (double quantile : quantiles) {
+            String label = "p" + BigDecimal.valueOf(quantile * 100).stripTrailingZeros().toPlainString();
+            results.put(label, sketch.quantile(quantile));
         }
         
         return results;
     }
     
+    private static QuantileSketch readSketch(Row row) {
+        ByteBuffer bytes = row.getByteBuffer("sketch");
+        if (bytes == null || !bytes.hasRemaining()) {
+            return null;
+        }
+        byte[] data = new byte[bytes.remaining()];
+        bytes.duplicate().get(data);
+        return QuantileSketch.decode(data);
+    }
+    
     /**
      * Get anomalies for a service and metric within a time range
      */
@@ -257,21 +680,19 @@ public class CassandraMetricsDAO {
     }
     
     /**
-     * Get latest metrics for all services
+     * Get latest metrics for all services, reported within the last hour
      */
     public Map<String, Map<String, Double>> getLatestMetrics() {
-        // Use a custom query for this operation
-        String query = "SELECT service, metric, value FROM raw_metrics " +
-                       "WHERE timestamp > ? PER PARTITION LIMIT 1";
-        
-        // Get metrics from the last hour
-        PreparedStatement stmt = session.prepare(query);
-        BoundStatement bound = stmt.bind(Instant.now().minus(1, ChronoUnit.HOURS));
-        ResultSet rs = session.execute(bound);
+        Instant oneHourAgo = Instant.now().minus(1, ChronoUnit.HOURS);
+        ResultSet rs = session.execute(getLatestMetricsStmt.bind());
         
         Map<String, Map<String, Double>> results = new HashMap<>();
         
         for (Row row : rs) {
+            Instant timestamp = row.getInstant("timestamp");
+            if (timestamp == null || timestamp.isBefore(oneHourAgo)) {
+                continue;
+            }
             String service = row.getString("service");
             String metric = row.getString("metric");
             double value = row.getDouble("value");
@@ -283,10 +704,22 @@ public class CassandraMetricsDAO {
         return results;
     }
     
+    /**
+     * Every series that reported within the retention of latest_metric_value (one day)
+     */
+    public List<SeriesKey> listSeries() {
+        List<SeriesKey> series = new ArrayList<>();
+        for (Row row : session.execute(getLatestMetricsStmt.bind())) {
+            series.add(new SeriesKey(row.getString("service"), row.getString("metric")));
+        }
+        return series;
+    }
+    
     /**
      * Close the Cassandra session
      */
     public void close() {
+        writePipeline.close();
         if (session != null) {
             session.close();
             logger.info("Cassandra session closed");
@@ -306,51 +739,87 @@ public class CassandraMetricsDAO {
         Instant now = Instant.now();
         Instant oneDayAgo = now.minus(24, ChronoUnit.HOURS);
         
-        // Use a custom query to get all anomalies across services
-        String anomalyQuery = "SELECT * FROM anomalies WHERE timestamp > ? ALLOW FILTERING";
-        PreparedStatement anomalyStmt = session.prepare(anomalyQuery);
-        BoundStatement anomalyBound = anomalyStmt.bind(oneDayAgo);
-        ResultSet anomalyRs = session.execute(anomalyBound);
-        
+        // Read the day partitions covering the window, newest first
         List<Map<String, Object>> recentAnomalies = new ArrayList<>();
-        for (Row row : anomalyRs) {
-            Map<String, Object> anomaly = new HashMap<>();
-            anomaly.put("id", row.getUuid("id").toString());
-            anomaly.put("service", row.getString("service"));
-            anomaly.put("metric", row.getString("metric"));
-            anomaly.put("timestamp", row.getInstant("timestamp").toEpochMilli());
-            anomaly.put("value", row.getDouble("value"));
-            anomaly.put("expected_value", row.getDouble("expected_value"));
-            anomaly.put("deviation", row.getDouble("deviation"));
-            anomaly.put("severity", row.getString("severity"));
-            recentAnomalies.add(anomaly);
+        LocalDate firstDay = LocalDate.ofInstant(oneDayAgo, ZoneOffset.UTC);
+        for (LocalDate day = LocalDate.ofInstant(now, ZoneOffset.UTC);
+             !day.isBefore(firstDay) && recentAnomalies.size() < dashboardAnomalyLimit;
+             day = day.minusDays(1)) {
+            BoundStatement anomalyBound = getRecentAnomaliesStmt.bind(
+                    day, oneDayAgo, dashboardAnomalyLimit - recentAnomalies.size());
+            for (Row row : session.execute(anomalyBound)) {
+                Map<String, Object> anomaly = new HashMap<>();
+                anomaly.put("id", row.getUuid("id").toString());
+                anomaly.put("service", row.getString("service"));
+                anomaly.put("metric", row.getString("metric"));
+                anomaly.put("timestamp", row.getInstant("timestamp").toEpochMilli());
+                anomaly.put("value", row.getDouble("value"));
+                anomaly.put("expected_value", row.getDouble("expected_value"));
+                anomaly.put("deviation", row.getDouble("deviation"));
+                anomaly.put("severity", row.getString("severity"));
+                recentAnomalies.add(anomaly);
+            }
         }
         dashboardData.put("recentAnomalies", recentAnomalies);
         
         // Get service health
-        String healthQuery = "SELECT * FROM service_health WHERE timestamp > ? ALLOW FILTERING";
-        PreparedStatement healthStmt = session.prepare(healthQuery);
-        BoundStatement healthBound = healthStmt.bind(oneDayAgo);
-        ResultSet healthRs = session.execute(healthBound);
+        ResultSet healthRs = session.execute(getLatestServiceHealthStmt.bind());
         
         Map<String, Object> serviceHealth = new HashMap<>();
         for (Row row : healthRs) {
-            String service = row.getString("service");
-            if (!serviceHealth.containsKey(service)) {
-                Map<String, Object> health = new HashMap<>();
-                health.put("service", service);
-                health.put("timestamp", row.getInstant("timestamp").toEpochMilli());
-                health.put("status", row.getString("status"));
-                health.put("metrics_count", row.getInt("metrics_count"));
-                health.put("anomalies_count", row.getInt("anomalies_count"));
-                health.put("avg_response_time", row.getDouble("avg_response_time"));
-                health.put("avg_cpu_usage", row.getDouble("avg_cpu_usage"));
-                health.put("avg_memory_usage", row.getDouble("avg_memory_usage"));
-                serviceHealth.put(service, health);
+            Instant timestamp = row.getInstant("timestamp");
+            if (timestamp == null || !timestamp.isAfter(oneDayAgo)) {
+                continue;
             }
+            String service = row.getString("service");
+            Map<String, Object> health = new HashMap<>();
+            health.put("service", service);
+            health.put("timestamp", timestamp.toEpochMilli());
+            health.put("status", row.getString("status"));
+            health.put("metrics_count", row.getInt("metrics_count"));
+            health.put("anomalies_count", row.getInt("anomalies_count"));
+            health.put("avg_response_time", row.getDouble("avg_response_time"));
+            health.put("avg_cpu_usage", row.getDouble("avg_cpu_usage"));
+            health.put("avg_memory_usage", row.getDouble("avg_memory_usage"));
+            serviceHealth.put(service, health);
         }
         dashboardData.put("serviceHealth", serviceHealth);
         
         return dashboardData;
     }
+    
+    /**
+     * Cache key of one time bucket of one series in one table
+     */
+    private static final class BucketKey {
+        private final String table;
+        private final String service;
+        private final String metric;
+        private final long bucketStart;
+        
+        BucketKey(String table, String service, String metric, long bucketStart) {
+            this.table = table;
+            this.service = service;
+            this.metric = metric;
+            this.bucketStart = bucketStart;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BucketKey)) {
+                return false;
+            }
+            BucketKey other = (BucketKey) o;
+            return bucketStart == other.bucketStart && table.equals(other.table)
+                    && service.equals(other.service) && metric.equals(other.metric);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(table, service, metric, bucketStart);
+        }
+    }
 }
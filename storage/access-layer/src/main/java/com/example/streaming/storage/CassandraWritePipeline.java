@@ -0,0 +1,323 @@
+package com.example.streaming.storage;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.cql.*;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batched, bounded-concurrency write path for Cassandra.
+ *
+ * Writes are grouped per statement and partition into unlogged batches, which
+ * Cassandra applies as a single mutation per partition. Batches are sent when
+ * they fill up, when they have lingered for the configured interval, or on
+ * flush(). Two limits keep memory and driver load bounded:
+ *   - maxQueuedWrites caps statements accepted but not yet completed; write()
+ *     blocks once it is reached, pushing back on the caller
+ *   - maxInFlightRequests caps concurrent requests to the cluster
+ * Failed requests with a retryable error are retried with exponential backoff;
+ * every write's CompletionStage completes exceptionally once retries run out,
+ * so no failure is silently dropped.
+ */
+public class CassandraWritePipeline implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CassandraWritePipeline.class);
+
+    private final CqlSession session;
+    private final int maxBatchSize;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+
+    private final Semaphore queuePermits;
+    private final Semaphore inFlightPermits;
+    private final ScheduledExecutorService scheduler;
+
+    // Open batches per statement and partition, guarded by this map's lock
+    private final Map<PartitionKey, List<PendingWrite>> openBatches = new HashMap<>();
+    private final Set<CompletableFuture<Void>> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicLong completedWrites = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong retriedRequests = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public CassandraWritePipeline(CqlSession session, int maxInFlightRequests, int maxQueuedWrites,
+                                  int maxBatchSize, long lingerMs, int maxRetries, long retryBackoffMs) {
+        this.session = session;
+        this.maxBatchSize = maxBatchSize;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMs = retryBackoffMs;
+        this.queuePermits = new Semaphore(maxQueuedWrites);
+        this.inFlightPermits = new Semaphore(maxInFlightRequests);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cassandra-write-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::sendLingeringBatches, lingerMs, lingerMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a pipeline configured from CASSANDRA_WRITE_* environment variables
+     */
+    public static CassandraWritePipeline fromEnvironment(CqlSession session) {
+        Map<String, String> env = System.getenv();
+        return new CassandraWritePipeline(
+                session,
+                Integer.parseInt(env.getOrDefault("CASSANDRA_WRITE_MAX_IN_FLIGHT", "64")),
+                Integer.parseInt(env.getOrDefault("CASSANDRA_WRITE_MAX_QUEUED", "20000")),
+                Integer.parseInt(env.getOrDefault("CASSANDRA_WRITE_BATCH_SIZE", "20")),
+                Long.parseLong(env.getOrDefault("CASSANDRA_WRITE_LINGER_MS", "50")),
+                Integer.parseInt(env.getOrDefault("CASSANDRA_WRITE_MAX_RETRIES", "5")),
+                Long.parseLong(env.getOrDefault("CASSANDRA_WRITE_RETRY_BACKOFF_MS", "100")));
+    }
+
+    /**
+     * Queue a write for the partition identified by service and metric (metric may be
+     * null for tables partitioned by service only). Blocks while the queue is full.
+     */
+    public CompletionStage<Void> write(BoundStatement statement, String service, String metric) {
+        if (closed) {
+            throw new IllegalStateException("Write pipeline is closed");
+        }
+
+        try {
+            queuePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<Void> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(e);
+            return interrupted;
+        }
+        queueDepth.incrementAndGet();
+
+        PartitionKey key = new PartitionKey(statement.getPreparedStatement(), service, metric);
+        PendingWrite write = new PendingWrite(key, statement.setIdempotent(true));
+        outstanding.add(write.future);
+        write.future.whenComplete((result, error) -> {
+            outstanding.remove(write.future);
+            queueDepth.decrementAndGet();
+            queuePermits.release();
+        });
+
+        List<PendingWrite> fullBatch = null;
+        synchronized (openBatches) {
+            List<PendingWrite> batch = openBatches.computeIfAbsent(key, k -> new ArrayList<>());
+            batch.add(write);
+            if (batch.size() >= maxBatchSize) {
+                fullBatch = openBatches.remove(key);
+            }
+        }
+
+        if (fullBatch != null) {
+            send(fullBatch, true);
+        }
+        return write.future;
+    }
+
+    /**
+     * Send every open batch and complete once all writes queued so far have completed,
+     * exceptionally if any of them failed
+     */
+    public CompletionStage<Void> flush() {
+        for (List<PendingWrite> batch : drainOpenBatches()) {
+            send(batch, true);
+        }
+        return CompletableFuture.allOf(outstanding.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Statements accepted but not yet written or failed
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    public long getCompletedWrites() {
+        return completedWrites.get();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    public long getRetriedRequests() {
+        return retriedRequests.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Some Cassandra writes failed while flushing on close: {}", e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            logger.warn("Timed out flushing {} pending Cassandra writes on close", queueDepth.get());
+        }
+        scheduler.shutdownNow();
+    }
+
+    private List<List<PendingWrite>> drainOpenBatches() {
+        synchronized (openBatches) {
+            List<List<PendingWrite>> batches = new ArrayList<>(openBatches.values());
+            openBatches.clear();
+            return batches;
+        }
+    }
+
+    /**
+     * Send partial batches from the scheduler thread without blocking it; batches that
+     * find no free request slot are put back for the next round
+     */
+    private void sendLingeringBatches() {
+        for (List<PendingWrite> batch : drainOpenBatches()) {
+            if (!send(batch, false)) {
+                requeue(batch);
+            }
+        }
+    }
+
+    private void requeue(List<PendingWrite> batch) {
+        synchronized (openBatches) {
+            openBatches.computeIfAbsent(batch.get(0).key, k -> new ArrayList<>()).addAll(0, batch);
+        }
+    }
+
+    /**
+     * Send a batch, waiting for a request slot if blocking, otherwise returning false when none is free
+     */
+    private boolean send(List<PendingWrite> batch, boolean blocking) {
+        if (blocking) {
+            inFlightPermits.acquireUninterruptibly();
+        } else if (!inFlightPermits.tryAcquire()) {
+            return false;
+        }
+        inFlightRequests.incrementAndGet();
+        execute(batch, toStatement(batch), 0);
+        return true;
+    }
+
+    private Statement<?> toStatement(List<PendingWrite> batch) {
+        if (batch.size() == 1) {
+            return batch.get(0).statement;
+        }
+        BatchStatement statement = BatchStatement.newInstance(DefaultBatchType.UNLOGGED);
+        for (PendingWrite write : batch) {
+            statement = statement.add(write.statement);
+        }
+        return statement.setIdempotent(true);
+    }
+
+    private void execute(List<PendingWrite> batch, Statement<?> statement, int attempt) {
+        session.executeAsync(statement).whenComplete((result, error) -> {
+            if (error == null) {
+                finish(batch, null);
+            } else if (attempt < maxRetries && isRetryable(error)) {
+                retriedRequests.incrementAndGet();
+                long delay = Math.min(retryBackoffMs << attempt, 10_000L);
+                delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                logger.debug("Retrying Cassandra write of {} statements in {} ms: {}", batch.size(), delay, error.getMessage());
+                scheduler.schedule(() -> execute(batch, statement, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            } else {
+                logger.error("Cassandra write of {} statements failed after {} attempts: {}",
+                        batch.size(), attempt + 1, error.getMessage());
+                finish(batch, error);
+            }
+        });
+    }
+
+    private void finish(List<PendingWrite> batch, Throwable error) {
+        inFlightRequests.decrementAndGet();
+        inFlightPermits.release();
+        for (PendingWrite write : batch) {
+            if (error == null) {
+                completedWrites.incrementAndGet();
+                write.future.complete(null);
+            } else {
+                failedWrites.incrementAndGet();
+                write.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof WriteTimeoutException
+                || cause instanceof UnavailableException
+                || cause instanceof OverloadedException
+                || cause instanceof DriverTimeoutException
+                || cause instanceof AllNodesFailedException;
+    }
+
+    /**
+     * A queued statement and the future completed once it is written
+     */
+    private static class PendingWrite {
+        private final PartitionKey key;
+        private final BoundStatement statement;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(PartitionKey key, BoundStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * Target statement and partition of a write; writes with equal keys share a batch
+     */
+    private static final class PartitionKey {
+        private final PreparedStatement statement;
+        private final String service;
+        private final String metric;
+
+        PartitionKey(PreparedStatement statement, String service, String metric) {
+            this.statement = statement;
+            this.service = service;
+            this.metric = metric;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PartitionKey)) {
+                return false;
+            }
+            PartitionKey other = (PartitionKey) o;
+            return statement == other.statement
+                    && Objects.equals(service, other.service)
+                    && Objects.equals(metric, other.metric);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(statement), service, metric);
+        }
+    }
+}
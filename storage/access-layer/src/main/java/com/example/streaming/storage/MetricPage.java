@@ -0,0 +1,59 @@
+package com.example.streaming.storage;
+
+/**
+ * One page of a series read, newest first, in columnar form.
+ *
+ * Raw pages carry timestamps and values. Aggregated pages use the window
+ * start as timestamp and the average as value, and also carry the minimum,
+ * maximum and count of each window; these arrays are null for raw pages.
+ * The paging state resumes the same query after this page and is null on
+ * the last page.
+ */
+public final class MetricPage {
+    private final String service;
+    private final String metric;
+    private final long[] timestamps;
+    private final double[] values;
+    private final double[] minValues;
+    private final double[] maxValues;
+    private final long[] counts;
+    private final String pagingState;
+
+    public MetricPage(String service, String metric, long[] timestamps, double[] values,
+                      double[] minValues, double[] maxValues, long[] counts, String pagingState) {
+        this.service = service;
+        this.metric = metric;
+        this.timestamps = timestamps;
+        this.values = values;
+        this.minValues = minValues;
+        this.maxValues = maxValues;
+        this.counts = counts;
+        this.pagingState = pagingState;
+    }
+
+    public String getService() { return service; }
+
+    public String getMetric() { return metric; }
+
+    public int size() { return timestamps.length; }
+
+    /**
+     * Epoch milliseconds of each row
+     */
+    public long[] getTimestamps() { return timestamps; }
+
+    public double[] getValues() { return values; }
+
+    public double[] getMinValues() { return minValues; }
+
+    public double[] getMaxValues() { return maxValues; }
+
+    public long[] getCounts() { return counts; }
+
+    /**
+     * Token to pass back for the next page, or null when this is the last page
+     */
+    public String getPagingState() { return pagingState; }
+
+    public boolean hasMorePages() { return pagingState != null; }
+}
@@ -0,0 +1,98 @@
+package com.example.streaming.storage;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes the pages of a series read one at a time, as the subscriber
+ * requests them.
+ *
+ * A page is fetched only when there is outstanding demand and the previous
+ * fetch has completed, so at most one page per subscription is held in
+ * memory however long the range is. Each subscription starts from the
+ * given paging state and follows the state returned with every page.
+ */
+final class MetricPagePublisher implements Flow.Publisher<MetricPage> {
+    private final Function<String, CompletionStage<MetricPage>> fetchPage;
+    private final String initialPagingState;
+
+    MetricPagePublisher(Function<String, CompletionStage<MetricPage>> fetchPage, String initialPagingState) {
+        this.fetchPage = fetchPage;
+        this.initialPagingState = initialPagingState;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super MetricPage> subscriber) {
+        subscriber.onSubscribe(new PageSubscription(subscriber, initialPagingState));
+    }
+
+    private final class PageSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super MetricPage> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Set while a page is being fetched; fetches never overlap
+        private final AtomicBoolean fetching = new AtomicBoolean();
+        private volatile boolean done;
+        // Only read and written by the fetch in progress
+        private String pagingState;
+
+        PageSubscription(Flow.Subscriber<? super MetricPage> subscriber, String pagingState) {
+            this.subscriber = subscriber;
+            this.pagingState = pagingState;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " pages; demand must be positive"));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            fetchNext();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        private void fetchNext() {
+            if (done || demand.get() == 0 || !fetching.compareAndSet(false, true)) {
+                return;
+            }
+            fetchPage.apply(pagingState).whenComplete((page, error) -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+                if (done) {
+                    return;
+                }
+                pagingState = page.getPagingState();
+                // Cassandra may return an empty page before the end of a range
+                if (page.size() > 0) {
+                    demand.decrementAndGet();
+                    subscriber.onNext(page);
+                }
+                if (pagingState == null) {
+                    if (!done) {
+                        done = true;
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                fetching.set(false);
+                fetchNext();
+            });
+        }
+
+        private void fail(Throwable error) {
+            if (!done) {
+                done = true;
+                subscriber.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.streaming.storage;
+
+import java.time.Duration;
+
+/**
+ * Aggregation resolutions and the Cassandra table each one is stored in
+ */
+public enum MetricResolution {
+    ONE_MINUTE("1m", "aggregated_metrics_1min", Duration.ofMinutes(1), Duration.ofHours(1), Duration.ofDays(90)),
+    ONE_HOUR("1h", "aggregated_metrics_1hour", Duration.ofHours(1), Duration.ofDays(1), Duration.ofDays(365)),
+    ONE_DAY("1d", "aggregated_metrics_1day", Duration.ofDays(1), Duration.ofDays(30), Duration.ofDays(3 * 365));
+    
+    // Upper bound on the number of buckets a range query should read at a given resolution
+    private static final long MAX_BUCKETS_PER_QUERY = 1500;
+    
+    private final String label;
+    private final String table;
+    private final Duration window;
+    private final Duration cacheBucket;
+    private final Duration retention;
+    
+    MetricResolution(String label, String table, Duration window, Duration cacheBucket, Duration retention) {
+        this.label = label;
+        this.table = table;
+        this.window = window;
+        this.cacheBucket = cacheBucket;
+        this.retention = retention;
+    }
+    
+    public String getLabel() { return label; }
+    
+    public String getTable() { return table; }
+    
+    public Duration getWindow() { return window; }
+    
+    /**
+     * Span of the time buckets range queries are cached in at this resolution
+     */
+    public Duration getCacheBucket() { return cacheBucket; }
+    
+    /**
+     * Default TTL of the table; nothing older is ever read back
+     */
+    public Duration getRetention() { return retention; }
+    
+    /**
+     * Look up a resolution by its label ("1m", "1h", "1d")
+     */
+    public static MetricResolution fromLabel(String label) {
+        for (MetricResolution resolution : values()) {
+            if (resolution.label.equals(label)) {
+                return resolution;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metric resolution: " + label);
+    }
+    
+    /**
+     * Finest resolution that covers the given range in a bounded number of rows
+     */
+    public static MetricResolution forRange(Duration range) {
+        for (MetricResolution resolution : values()) {
+            if (range.toMillis() / resolution.window.toMillis() <= MAX_BUCKETS_PER_QUERY) {
+                return resolution;
+            }
+        }
+        return ONE_DAY;
+    }
+}
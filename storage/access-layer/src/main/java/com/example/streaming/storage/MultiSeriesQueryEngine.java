@@ -0,0 +1,235 @@
+package com.example.streaming.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the aggregates of many series over one time range at once.
+ *
+ * Every series is its own Cassandra partition, so the series are read with
+ * asynchronous queries running side by side, at most maxConcurrency at a
+ * time; with enough slots the query takes about as long as its slowest
+ * series. Each series follows its pages one after the other and folds every
+ * page into a shared time axis as it arrives, so rows are never materialized.
+ * When maxPoints is set, adjacent windows are merged into steps of a whole
+ * number of windows so each series has at most that many points. The
+ * accumulators take about 32 bytes per point and series, so queries whose
+ * grid would exceed maxCells points in total are rejected before any read.
+ */
+public class MultiSeriesQueryEngine {
+    private static final Logger logger = LoggerFactory.getLogger(MultiSeriesQueryEngine.class);
+
+    private final CassandraMetricsDAO dao;
+    private final int maxConcurrency;
+    private final int pageSize;
+    private final long maxCells;
+
+    public MultiSeriesQueryEngine(CassandraMetricsDAO dao, int maxConcurrency, int pageSize, long maxCells) {
+        if (maxConcurrency <= 0 || pageSize <= 0 || maxCells <= 0) {
+            throw new IllegalArgumentException("Concurrency, page size and max cells must be positive");
+        }
+        this.dao = dao;
+        this.maxConcurrency = maxConcurrency;
+        this.pageSize = pageSize;
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Create an engine configured from MULTI_SERIES_* environment variables
+     */
+    public static MultiSeriesQueryEngine fromEnvironment(CassandraMetricsDAO dao) {
+        Map<String, String> env = System.getenv();
+        return new MultiSeriesQueryEngine(dao,
+                Integer.parseInt(env.getOrDefault("MULTI_SERIES_MAX_CONCURRENCY", "32")),
+                Integer.parseInt(env.getOrDefault("MULTI_SERIES_PAGE_SIZE", "5000")),
+                Long.parseLong(env.getOrDefault("MULTI_SERIES_MAX_CELLS", "2000000")));
+    }
+
+    /**
+     * Query every known series whose service and metric match the glob patterns
+     * ("*" matches any characters; null matches everything)
+     */
+    public CompletionStage<MultiSeriesResult> query(String servicePattern, String metricPattern,
+                                                    MetricResolution resolution, Instant startTime, Instant endTime,
+                                                    int maxPoints) {
+        Pattern services = globPattern(servicePattern);
+        Pattern metrics = globPattern(metricPattern);
+        List<SeriesKey> matching = new ArrayList<>();
+        for (SeriesKey key : dao.listSeries()) {
+            if (services.matcher(key.getService()).matches() && metrics.matcher(key.getMetric()).matches()) {
+                matching.add(key);
+            }
+        }
+        return query(matching, resolution, startTime, endTime, maxPoints);
+    }
+
+    /**
+     * Query the given series. A null resolution picks the finest one that suits
+     * the range; maxPoints of zero or less keeps one point per window.
+     * Throws IllegalArgumentException when series times points exceeds maxCells.
+     */
+    public CompletionStage<MultiSeriesResult> query(Collection<SeriesKey> keys, MetricResolution resolution,
+                                                    Instant startTime, Instant endTime, int maxPoints) {
+        if (endTime.isBefore(startTime)) {
+            throw new IllegalArgumentException("Range ends before it starts: " + startTime + " - " + endTime);
+        }
+        MetricResolution tableResolution = resolution != null
+                ? resolution
+                : MetricResolution.forRange(Duration.between(startTime, endTime));
+        List<SeriesKey> series = new ArrayList<>(keys);
+        long stepMs = stepMs(tableResolution, startTime, endTime, maxPoints);
+        long cells = series.size() * SeriesGrid.points(stepMs, startTime, endTime);
+        if (cells > maxCells) {
+            throw new IllegalArgumentException("Query of " + series.size() + " series would hold " + cells
+                    + " points, more than " + maxCells + "; narrow the range or series, or set maxPoints");
+        }
+        SeriesGrid grid = new SeriesGrid(series.size(), stepMs, startTime, endTime);
+
+        long started = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] readers = new CompletableFuture<?>[Math.min(maxConcurrency, series.size())];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = readNextSeries(series, next, tableResolution, startTime, endTime, grid).toCompletableFuture();
+        }
+        return CompletableFuture.allOf(readers).thenApply(ignored -> {
+            logger.debug("Read {} series at {} in {} ms", series.size(), tableResolution.getLabel(),
+                    (System.nanoTime() - started) / 1_000_000);
+            return grid.toResult(tableResolution, series);
+        });
+    }
+
+    /**
+     * Read series one after another until none is left; one of these runs per concurrency slot
+     */
+    private CompletionStage<Void> readNextSeries(List<SeriesKey> series, AtomicInteger next,
+                                                 MetricResolution resolution, Instant startTime, Instant endTime,
+                                                 SeriesGrid grid) {
+        int row = next.getAndIncrement();
+        if (row >= series.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return readPages(row, series.get(row), resolution, startTime, endTime, grid, null)
+                .thenCompose(ignored -> readNextSeries(series, next, resolution, startTime, endTime, grid));
+    }
+
+    private CompletionStage<Void> readPages(int row, SeriesKey key, MetricResolution resolution,
+                                            Instant startTime, Instant endTime, SeriesGrid grid, String pagingState) {
+        return dao.getAggregatedMetricsPage(resolution, key.getService(), key.getMetric(), startTime, endTime,
+                        pageSize, pagingState)
+                .thenCompose(page -> {
+                    grid.add(row, page);
+                    return page.hasMorePages()
+                            ? readPages(row, key, resolution, startTime, endTime, grid, page.getPagingState())
+                            : CompletableFuture.completedFuture(null);
+                });
+    }
+
+    /**
+     * Smallest whole number of windows per step that keeps the range within maxPoints
+     */
+    static long stepMs(MetricResolution resolution, Instant startTime, Instant endTime, int maxPoints) {
+        long windowMs = resolution.getWindow().toMillis();
+        if (maxPoints <= 0) {
+            return windowMs;
+        }
+        long windows = (endTime.toEpochMilli() - startTime.toEpochMilli()) / windowMs + 1;
+        long windowsPerStep = (windows + maxPoints - 1) / maxPoints;
+        return windowMs * Math.max(1, windowsPerStep);
+    }
+
+    static Pattern globPattern(String glob) {
+        if (glob == null || glob.equals("*")) {
+            return Pattern.compile(".*", Pattern.DOTALL);
+        }
+        StringBuilder regex = new StringBuilder();
+        for (String literal : glob.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(literal));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Per-series accumulators on the shared time axis. Each row is written only
+     * by the reader of its series; the result is built once all readers are done.
+     */
+    private static final class SeriesGrid {
+        private final long stepMs;
+        private final long firstPoint;
+        private final int points;
+        private final double[][] weightedSums;
+        private final double[][] minValues;
+        private final double[][] maxValues;
+        private final long[][] counts;
+
+        SeriesGrid(int series, long stepMs, Instant startTime, Instant endTime) {
+            this.stepMs = stepMs;
+            this.firstPoint = Math.floorDiv(startTime.toEpochMilli(), stepMs) * stepMs;
+            this.points = Math.toIntExact(points(stepMs, startTime, endTime));
+            this.weightedSums = new double[series][points];
+            this.minValues = new double[series][points];
+            this.maxValues = new double[series][points];
+            this.counts = new long[series][points];
+            for (int i = 0; i < series; i++) {
+                Arrays.fill(minValues[i], Double.NaN);
+                Arrays.fill(maxValues[i], Double.NaN);
+            }
+        }
+
+        static long points(long stepMs, Instant startTime, Instant endTime) {
+            return Math.floorDiv(endTime.toEpochMilli(), stepMs) - Math.floorDiv(startTime.toEpochMilli(), stepMs) + 1;
+        }
+
+        void add(int row, MetricPage page) {
+            long[] timestamps = page.getTimestamps();
+            for (int i = 0; i < page.size(); i++) {
+                long point = Math.floorDiv(timestamps[i] - firstPoint, stepMs);
+                if (point < 0 || point >= points) {
+                    continue;
+                }
+                int j = (int) point;
+                long count = page.getCounts()[i];
+                weightedSums[row][j] += page.getValues()[i] * count;
+                counts[row][j] += count;
+                minValues[row][j] = minOf(minValues[row][j], page.getMinValues()[i]);
+                maxValues[row][j] = maxOf(maxValues[row][j], page.getMaxValues()[i]);
+            }
+        }
+
+        MultiSeriesResult toResult(MetricResolution resolution, List<SeriesKey> series) {
+            long[] timestamps = new long[points];
+            for (int j = 0; j < points; j++) {
+                timestamps[j] = firstPoint + j * stepMs;
+            }
+            double[][] values = new double[series.size()][points];
+            for (int i = 0; i < values.length; i++) {
+                for (int j = 0; j < points; j++) {
+                    values[i][j] = counts[i][j] > 0 ? weightedSums[i][j] / counts[i][j] : Double.NaN;
+                }
+            }
+            return new MultiSeriesResult(resolution, stepMs, timestamps, series, values, minValues, maxValues, counts);
+        }
+
+        private static double minOf(double current, double value) {
+            return Double.isNaN(current) ? value : Math.min(current, value);
+        }
+
+        private static double maxOf(double current, double value) {
+            return Double.isNaN(current) ? value : Math.max(current, value);
+        }
+    }
+}
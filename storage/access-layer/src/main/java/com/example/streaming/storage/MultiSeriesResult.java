@@ -0,0 +1,58 @@
+package com.example.streaming.storage;
+
+import java.util.List;
+
+/**
+ * Several series on one shared time axis, in columnar form.
+ *
+ * Row i of the value arrays belongs to series i; column j to the point
+ * starting at timestamps[j]. Points are step milliseconds apart in ascending
+ * order, and points without data are NaN. Values are count-weighted averages.
+ */
+public final class MultiSeriesResult {
+    private final MetricResolution resolution;
+    private final long stepMs;
+    private final long[] timestamps;
+    private final List<SeriesKey> series;
+    private final double[][] values;
+    private final double[][] minValues;
+    private final double[][] maxValues;
+    private final long[][] counts;
+
+    public MultiSeriesResult(MetricResolution resolution, long stepMs, long[] timestamps, List<SeriesKey> series,
+                             double[][] values, double[][] minValues, double[][] maxValues, long[][] counts) {
+        this.resolution = resolution;
+        this.stepMs = stepMs;
+        this.timestamps = timestamps;
+        this.series = series;
+        this.values = values;
+        this.minValues = minValues;
+        this.maxValues = maxValues;
+        this.counts = counts;
+    }
+
+    /**
+     * Table the points were read from
+     */
+    public MetricResolution getResolution() { return resolution; }
+
+    /**
+     * Distance between points; a multiple of the resolution window when downsampled
+     */
+    public long getStepMs() { return stepMs; }
+
+    /**
+     * Epoch milliseconds at which each point starts
+     */
+    public long[] getTimestamps() { return timestamps; }
+
+    public List<SeriesKey> getSeries() { return series; }
+
+    public double[][] getValues() { return values; }
+
+    public double[][] getMinValues() { return minValues; }
+
+    public double[][] getMaxValues() { return maxValues; }
+
+    public long[][] getCounts() { return counts; }
+}
@@ -0,0 +1,118 @@
+package com.example.streaming.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of query results.
+ *
+ * Each entry has a weight (e.g. its row count). Once the total weight
+ * exceeds the limit, least recently used entries are evicted. Entries also
+ * expire after a fixed time, so a result that changed after it was cached,
+ * for example because of a very late write, is eventually read again.
+ * Hits, misses and evictions are counted for monitoring. Thread-safe.
+ */
+public class QueryCache<K, V> {
+    private final long maxWeight;
+    private final long expireAfterMs;
+
+    // Access-ordered, so iteration starts at the least recently used entry; guarded by this
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QueryCache(long maxWeight, long expireAfterMs) {
+        this.maxWeight = maxWeight;
+        this.expireAfterMs = expireAfterMs;
+    }
+
+    /**
+     * Cached value, or null when absent or expired
+     */
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt >= expireAfterMs) {
+                entries.remove(key);
+                weight -= entry.weight;
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value, long entryWeight) {
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, entryWeight, System.currentTimeMillis());
+        synchronized (this) {
+            Entry<V> previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drop the entry for the key, if any, so the next read loads it again
+     */
+    public synchronized void invalidate(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public long getHits() { return hits.sum(); }
+
+    public long getMisses() { return misses.sum(); }
+
+    public long getEvictions() { return evictions.sum(); }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+
+    public synchronized long getWeight() { return weight; }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+        final long loadedAt;
+
+        Entry(V value, long weight, long loadedAt) {
+            this.value = value;
+            this.weight = weight;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.streaming.storage;
+
+import java.util.Objects;
+
+/**
+ * A (service, metric) series, the partition key of the metric tables
+ */
+public final class SeriesKey {
+    private final String service;
+    private final String metric;
+
+    public SeriesKey(String service, String metric) {
+        this.service = Objects.requireNonNull(service, "service");
+        this.metric = Objects.requireNonNull(metric, "metric");
+    }
+
+    public String getService() { return service; }
+
+    public String getMetric() { return metric; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SeriesKey)) {
+            return false;
+        }
+        SeriesKey other = (SeriesKey) o;
+        return service.equals(other.service) && metric.equals(other.metric);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(service, metric);
+    }
+
+    @Override
+    public String toString() {
+        return service + ":" + metric;
+    }
+}
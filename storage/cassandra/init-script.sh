@@ -12,4 +12,10 @@ echo "Cassandra is up - executing schema"
 # Apply schema
 cqlsh -f /schema.cql
 
+# Keyspaces created before aggregate tables had a sketch column need it added
+if ! cqlsh -e "SELECT column_name FROM system_schema.columns WHERE keyspace_name = 'metrics_analytics' AND table_name = 'aggregated_metrics_1min' AND column_name = 'sketch'" | grep -q sketch; then
+  echo "Adding sketch column to aggregate tables"
+  cqlsh -f /migrations/001_aggregate_sketch.cql
+fi
+
 echo "Schema applied successfully"